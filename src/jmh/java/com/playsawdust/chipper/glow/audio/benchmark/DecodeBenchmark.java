@@ -0,0 +1,71 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.audio.io.PcmConversion;
+import com.playsawdust.chipper.glow.audio.io.WavInput;
+
+/**
+ * Measures decoding a whole WAV file, and the PCM conversion kernels on their own, at every supported bit depth. The
+ * legacyRead benchmark runs the decoder WavInput.read replaced, as the baseline for read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+	private static final int FRAMES = 48000; //One second of stereo at 48kHz
+	
+	@Param({"8", "16", "24", "32"})
+	public int bitsPerSample;
+	
+	private byte[] wav;
+	private ByteBuffer pcm;
+	private short[] dest;
+	
+	@Setup
+	public void setup() {
+		wav = WavFixtures.wav(bitsPerSample, 2, 48000, FRAMES);
+		pcm = ByteBuffer.wrap(wav, 44, wav.length-44).slice().order(ByteOrder.LITTLE_ENDIAN);
+		dest = new short[FRAMES*2];
+	}
+	
+	@Benchmark
+	public Sound read() throws IOException {
+		return WavInput.read(new ByteArrayInputStream(wav));
+	}
+	
+	@Benchmark
+	public short[] kernel() {
+		pcm.rewind();
+		PcmConversion.toShorts(bitsPerSample/8, pcm, ByteOrder.LITTLE_ENDIAN, dest, 0, dest.length);
+		return dest;
+	}
+	
+	@Benchmark
+	public Sound legacyRead() throws IOException {
+		return LegacyWavInput.read(new ByteArrayInputStream(wav));
+	}
+}
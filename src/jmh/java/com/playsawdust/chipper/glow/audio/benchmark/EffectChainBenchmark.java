@@ -0,0 +1,113 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.playsawdust.chipper.glow.audio.analog.AudioBus;
+import com.playsawdust.chipper.glow.audio.analog.AudioEffect;
+import com.playsawdust.chipper.glow.audio.analog.ConstantSampleIterator;
+
+/**
+ * Measures pulling one block of stereo audio through an AudioBus, for chains of different lengths. "block" effects
+ * override the block apply; "frame" effects only implement the per-frame apply, and go through the default bridge.
+ * The perFrame benchmark pulls the same block one frame at a time, the way consumers did before blocks existed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EffectChainBenchmark {
+	private static final int FRAMES = 1024;
+	
+	@Param({"0", "1", "4", "16"})
+	public int chainLength;
+	
+	@Param({"block", "frame"})
+	public String effect;
+	
+	private ConstantSampleIterator constant;
+	private AudioBus bus;
+	private short[] buffer = new short[FRAMES*2];
+	private short[] frame = new short[2];
+	
+	@Setup
+	public void setup() {
+		constant = new ConstantSampleIterator();
+		bus = new AudioBus();
+		bus.setSource(constant);
+		for(int i=0; i<chainLength; i++) {
+			bus.add(effect.equals("block") ? new BlockGain(0.9f) : new FrameGain(0.9f));
+		}
+		bus.open(48000, 2);
+		constant.getFrameBuffer()[0] = 1000;
+		constant.getFrameBuffer()[1] = -1000;
+	}
+	
+	@TearDown
+	public void tearDown() {
+		bus.close();
+	}
+	
+	@Benchmark
+	public short[] block() {
+		bus.next(buffer, 0, FRAMES);
+		return buffer;
+	}
+	
+	@Benchmark
+	public short[] perFrame() {
+		for(int i=0; i<FRAMES; i++) {
+			bus.next(frame);
+			System.arraycopy(frame, 0, buffer, i*2, 2);
+		}
+		return buffer;
+	}
+	
+	@Benchmark
+	public short[] constantBlock() {
+		constant.next(buffer, 0, FRAMES);
+		return buffer;
+	}
+	
+	private static class FrameGain extends AudioEffect {
+		protected final float gain;
+		
+		FrameGain(float gain) {
+			this.gain = gain;
+		}
+		
+		@Override
+		public void apply(short[] src, short[] dest) {
+			for(int i=0; i<channels; i++) dest[i] = (short) (src[i]*gain);
+		}
+	}
+	
+	private static class BlockGain extends FrameGain {
+		BlockGain(float gain) {
+			super(gain);
+		}
+		
+		@Override
+		public void apply(short[] src, int srcOffset, short[] dest, int destOffset, int frames) {
+			int samples = frames*channels;
+			for(int i=0; i<samples; i++) dest[destOffset+i] = (short) (src[srcOffset+i]*gain);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.riff.ListRiffChunk;
+import com.playsawdust.chipper.glow.io.riff.RiffChunk;
+import com.playsawdust.chipper.glow.io.riff.RiffInputStream;
+
+/**
+ * The WAV decoder WavInput.read used before the PCM conversion kernels: the file is parsed into a RIFF chunk tree, and
+ * every sample is read through DataSlice one at a time. Kept unchanged, apart from its debug comments, as the baseline
+ * for {@link DecodeBenchmark}.
+ */
+final class LegacyWavInput {
+	private LegacyWavInput() {}
+	
+	static Sound read(InputStream in) throws IOException {
+		RiffChunk chunk = new RiffInputStream(in).readChunk();
+		in.close();
+		if (chunk instanceof ListRiffChunk) {
+			ListRiffChunk list = (ListRiffChunk) chunk;
+			
+			if (list.getListType().equals("WAVE")) {
+				//Grab the two chunks we *need*
+				RiffChunk fmtChunk = null;
+				RiffChunk dataChunk = null;
+				
+				for(RiffChunk child : list.getChildren()) {
+					if (child.getChunkType().equals("fmt")) fmtChunk = child;
+					if (child.getChunkType().equals("data")) dataChunk = child;
+				}
+				
+				if (fmtChunk==null) throw new IOException("No formatting data present in this file.");
+				if (dataChunk==null) throw new IOException("No waveform data present in this file.");
+				
+				DataSlice formatSlice = fmtChunk.getChunkData();
+				formatSlice.seek(0L); //reset the slice position just in case, but keep it in LE
+				int sampleFormat = formatSlice.readI16u();
+				if (sampleFormat!=0x0001) throw new IOException("Unknown sample format 0x"+Integer.toHexString(sampleFormat));
+				int numChannels = formatSlice.readI16u();
+				int samplesPerSecond = formatSlice.readI32s();
+				formatSlice.readI32s(); //bytesPerSecond
+				
+				formatSlice.readI16u(); //blockAlignment
+				int bitsPerSample = formatSlice.readI16u();
+				if ((bitsPerSample%8)!=0) throw new IOException("Unusual data encoding!");
+				
+				DataSlice waveformData = dataChunk.getChunkData();
+				waveformData.seek(0L);
+				
+				int bytesPerSample = bitsPerSample/8;
+				int sampleCount = (int) (waveformData.length() / (bytesPerSample*numChannels));
+				short[] sampleData = new short[sampleCount*numChannels];
+				
+				for(int i=0; i<sampleCount; i++) {
+					for(int j=0; j<numChannels; j++) {
+						sampleData[i*numChannels+j] = readShortSample(bytesPerSample, waveformData);
+					}
+				}
+				return new Sound(samplesPerSecond, numChannels, sampleData);
+			} else {
+				throw new IOException("File is a valid RIFF but does not contain WAV data.");
+			}
+		} else {
+			throw new IOException("File is a valid RIFF but does not contain WAV data.");
+		}
+	}
+	
+	private static short readShortSample(int bytesPerSample, DataSlice in) throws IOException {
+		switch(bytesPerSample) {
+		case 1:
+			int value = in.read() - 128;
+			return (short) (value * 256);
+		case 2:
+			return in.readI16s();
+		case 3:
+			int a = in.read() & 0xFF;
+			int b = in.read() & 0xFF;
+			int c = in.read() & 0xFF;
+			
+			if (in.getByteOrder()==ByteOrder.BIG_ENDIAN) {
+				int reconstruct = (a << 16) | (b << 8) | c;
+				if ((a & 0x80) != 0) reconstruct |= 0xFF000000;
+				return (short) (reconstruct / 256);
+			} else {
+				int reconstruct = (c << 16) | (b << 8) | a;
+				if ((c & 0x80) != 0) reconstruct |= 0xFF000000;
+				return (short) (reconstruct / 256);
+			}
+		case 4:
+			return (short) (in.readI32s() >> 16);
+		default:
+			return 0;
+		}
+	}
+}
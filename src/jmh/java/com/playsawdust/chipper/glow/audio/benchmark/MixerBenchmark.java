@@ -0,0 +1,66 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.playsawdust.chipper.glow.audio.analog.AudioMixer;
+import com.playsawdust.chipper.glow.audio.analog.ConstantSampleIterator;
+
+/**
+ * Measures mixing one block of stereo audio from many constant inputs, serially and on the common pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixerBenchmark {
+	private static final int FRAMES = 1024;
+	
+	@Param({"8", "64", "256"})
+	public int inputs;
+	
+	@Param({"false", "true"})
+	public boolean parallel;
+	
+	private AudioMixer mixer;
+	private short[] buffer = new short[FRAMES*2];
+	
+	@Setup
+	public void setup() {
+		mixer = new AudioMixer();
+		for(int i=0; i<inputs; i++) {
+			mixer.add(new ConstantSampleIterator()).setGain(1.0f/inputs).setPan((i%3)-1);
+		}
+		if (parallel) mixer.setParallelism(ForkJoinPool.commonPool());
+		mixer.open(48000, 2);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		mixer.close();
+	}
+	
+	@Benchmark
+	public short[] mix() {
+		mixer.next(buffer, 0, FRAMES);
+		return buffer;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.openal.SOFTLoopback;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.playsawdust.chipper.glow.audio.BufferedSound;
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.audio.al.ALAudioBuffer;
+
+/**
+ * Measures uploading a Sound into an AL buffer. Runs against an OpenAL Soft loopback device, which renders nowhere, so
+ * it needs no sound hardware and is stable on build machines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UploadBenchmark {
+	@Param({"1", "10"})
+	public int seconds;
+	
+	private long device;
+	private long context;
+	private ALAudioBuffer buffer;
+	private Sound heapSound;
+	private BufferedSound directSound;
+	private ShortBuffer direct;
+	
+	@Setup
+	public void setup() {
+		ALCCapabilities nullCaps = ALC.getCapabilities();
+		if (!nullCaps.ALC_SOFT_loopback) throw new IllegalStateException("This benchmark needs OpenAL Soft's loopback device.");
+		device = SOFTLoopback.alcLoopbackOpenDeviceSOFT((CharSequence) null);
+		ALCCapabilities alcCaps = ALC.createCapabilities(device);
+		context = ALC10.alcCreateContext(device, new int[] {
+				SOFTLoopback.ALC_FORMAT_CHANNELS_SOFT, SOFTLoopback.ALC_STEREO_SOFT,
+				SOFTLoopback.ALC_FORMAT_TYPE_SOFT, SOFTLoopback.ALC_SHORT_SOFT,
+				ALC10.ALC_FREQUENCY, 48000,
+				0
+		});
+		ALC10.alcMakeContextCurrent(context);
+		AL.createCapabilities(alcCaps);
+		
+		short[] samples = WavFixtures.samples(48000*2*seconds);
+		heapSound = new Sound(48000, 2, samples);
+		direct = MemoryUtil.memAllocShort(samples.length);
+		direct.put(samples).flip();
+		directSound = new BufferedSound(48000, 2, direct);
+		buffer = new ALAudioBuffer();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		buffer.delete();
+		MemoryUtil.memFree(direct);
+		ALC10.alcMakeContextCurrent(0L);
+		ALC10.alcDestroyContext(context);
+		ALC10.alcCloseDevice(device);
+	}
+	
+	@Benchmark
+	public ALAudioBuffer uploadHeap() {
+		buffer.loadEntire(heapSound);
+		return buffer;
+	}
+	
+	@Benchmark
+	public ALAudioBuffer uploadDirect() {
+		buffer.loadEntire(directSound);
+		return buffer;
+	}
+}
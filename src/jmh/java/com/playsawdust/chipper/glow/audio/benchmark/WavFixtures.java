@@ -0,0 +1,63 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Synthesizes WAV files in memory, so benchmarks don't depend on files on disk.
+ */
+final class WavFixtures {
+	private WavFixtures() {}
+	
+	/**
+	 * Creates a complete PCM WAV file filled with seeded noise.
+	 * @param bitsPerSample 8, 16, 24, or 32
+	 */
+	static byte[] wav(int bitsPerSample, int channels, int frequency, int frames) {
+		int bytesPerSample = bitsPerSample/8;
+		int blockAlign = bytesPerSample*channels;
+		int dataLength = frames*blockAlign;
+		
+		ByteBuffer buf = ByteBuffer.allocate(44 + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(0x46464952); //"RIFF"
+		buf.putInt(36 + dataLength);
+		buf.putInt(0x45564157); //"WAVE"
+		
+		buf.putInt(0x20746d66); //"fmt "
+		buf.putInt(16);
+		buf.putShort((short) 1); //PCM
+		buf.putShort((short) channels);
+		buf.putInt(frequency);
+		buf.putInt(frequency*blockAlign);
+		buf.putShort((short) blockAlign);
+		buf.putShort((short) bitsPerSample);
+		
+		buf.putInt(0x61746164); //"data"
+		buf.putInt(dataLength);
+		byte[] noise = new byte[dataLength];
+		new Random(1234L).nextBytes(noise);
+		buf.put(noise);
+		
+		return buf.array();
+	}
+	
+	/**
+	 * Creates interleaved 16-bit samples filled with seeded noise.
+	 */
+	static short[] samples(int count) {
+		Random random = new Random(1234L);
+		short[] result = new short[count];
+		for(int i=0; i<count; i++) result[i] = (short) random.nextInt();
+		return result;
+	}
+}
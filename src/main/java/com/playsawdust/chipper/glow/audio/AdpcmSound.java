@@ -0,0 +1,275 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A Sound kept compressed as IMA ADPCM, at 4 bits per sample plus a small header per block: roughly a quarter of the
+ * memory of 16-bit PCM, at the cost of some high-frequency hiss. This suits short one-shot effects, which are numerous
+ * and rarely listened to closely. Where the AL supports AL_EXT_IMA4, the compressed data is uploaded as-is and stays
+ * compressed in the AL too; elsewhere it's decoded at upload time.
+ *
+ * <p>The data is laid out as in IMA ADPCM WAV files, which is also the layout AL_EXT_IMA4 expects. Each block starts
+ * with a 4-byte header per channel holding the first sample and the step index, followed by the remaining samples as
+ * nibbles. Stereo nibbles alternate channels every 8 samples.
+ */
+public class AdpcmSound extends Sound {
+	/** OpenAL's default IMA4 block size, which any driver with AL_EXT_IMA4 can take without AL_SOFT_block_alignment */
+	public static final int DEFAULT_SAMPLES_PER_BLOCK = 65;
+	
+	private static final int[] STEP_TABLE = {
+			7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45, 50, 55, 60, 66, 73, 80, 88, 97,
+			107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724,
+			796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327, 3660, 4026,
+			4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899, 15289, 16818, 18500,
+			20350, 22385, 24623, 27086, 29794, 32767
+	};
+	private static final int[] INDEX_TABLE = { -1, -1, -1, -1, 2, 4, 6, 8 };
+	
+	protected final ByteBuffer blocks;
+	protected final int frames;
+	protected final int samplesPerBlock;
+	
+	/**
+	 * Wraps data that's already IMA ADPCM encoded, such as the data chunk of an IMA ADPCM WAV file.
+	 * @param frequency       the sample frequency, in Hertz
+	 * @param channels        1 or 2
+	 * @param frames          how many sample frames the data decodes to. The last block may hold padding past this.
+	 * @param samplesPerBlock how many frames each block decodes to. MUST be one more than a multiple of 8.
+	 * @param blocks          the encoded blocks, from the buffer's position to its limit
+	 */
+	public AdpcmSound(int frequency, int channels, int frames, int samplesPerBlock, ByteBuffer blocks) {
+		super(frequency, channels, null);
+		if (channels<1 || channels>2) throw new IllegalArgumentException("ADPCM Sounds must be mono or stereo, not "+channels+" channels.");
+		if (samplesPerBlock<9 || (samplesPerBlock-1)%8!=0) throw new IllegalArgumentException("Blocks must hold 8n+1 samples, not "+samplesPerBlock);
+		long needed = blockCount(frames, samplesPerBlock) * (long) blockSize(channels, samplesPerBlock);
+		if (blocks.remaining()<needed) throw new IllegalArgumentException("Expected "+needed+" bytes of blocks, got "+blocks.remaining());
+		
+		this.frames = frames;
+		this.samplesPerBlock = samplesPerBlock;
+		this.blocks = blocks.slice();
+	}
+	
+	/**
+	 * Compresses a Sound with the default block size.
+	 */
+	public static AdpcmSound encode(Sound sound) {
+		return encode(sound, DEFAULT_SAMPLES_PER_BLOCK);
+	}
+	
+	/**
+	 * Compresses a Sound. Larger blocks spend less space on headers, so 1017 samples per block comes close to a 4:1
+	 * ratio against the default's 3.6:1, but the AL can only take blocks other than the default if it supports
+	 * AL_SOFT_block_alignment.
+	 * @param sound           a mono or stereo Sound
+	 * @param samplesPerBlock how many frames each block holds. MUST be one more than a multiple of 8.
+	 */
+	public static AdpcmSound encode(Sound sound, int samplesPerBlock) {
+		int channels = sound.getChannelCount();
+		if (channels<1 || channels>2) throw new IllegalArgumentException("ADPCM Sounds must be mono or stereo, not "+channels+" channels.");
+		if (samplesPerBlock<9 || (samplesPerBlock-1)%8!=0) throw new IllegalArgumentException("Blocks must hold 8n+1 samples, not "+samplesPerBlock);
+		
+		short[] pcm = sound.getData();
+		int frames = pcm.length/channels;
+		int blockCount = blockCount(frames, samplesPerBlock);
+		int blockSize = blockSize(channels, samplesPerBlock);
+		ByteBuffer result = ByteBuffer.allocateDirect(blockCount*blockSize);
+		
+		int[] predictor = new int[channels];
+		int[] index = new int[channels];
+		for(int block=0; block<blockCount; block++) {
+			int base = block*blockSize;
+			int firstFrame = block*samplesPerBlock;
+			for(int ch=0; ch<channels; ch++) {
+				//The header holds the first sample exactly, so each block starts without error
+				int first = sampleAt(pcm, channels, frames, firstFrame, ch);
+				predictor[ch] = first;
+				int header = base + ch*4;
+				result.put(header, (byte) first);
+				result.put(header+1, (byte) (first >> 8));
+				result.put(header+2, (byte) index[ch]);
+				result.put(header+3, (byte) 0);
+			}
+			
+			//Then groups of 8 nibbles per channel, 4 bytes each, alternating channels
+			int pos = base + channels*4;
+			for(int group=0; group<(samplesPerBlock-1)/8; group++) {
+				for(int ch=0; ch<channels; ch++) {
+					for(int b=0; b<4; b++) {
+						int frame = firstFrame + 1 + group*8 + b*2;
+						int low = encodeNibble(sampleAt(pcm, channels, frames, frame, ch), predictor, index, ch);
+						int high = encodeNibble(sampleAt(pcm, channels, frames, frame+1, ch), predictor, index, ch);
+						result.put(pos++, (byte) (low | (high << 4)));
+					}
+				}
+			}
+		}
+		
+		return new AdpcmSound(sound.getFrequency(), channels, frames, samplesPerBlock, result);
+	}
+	
+	/**
+	 * Gets a view of the encoded blocks. The returned buffer is direct, and shares its contents with this Sound but has
+	 * its own position and limit.
+	 */
+	public ByteBuffer getBlocks() {
+		return blocks.duplicate();
+	}
+	
+	public int getSamplesPerBlock() {
+		return samplesPerBlock;
+	}
+	
+	/**
+	 * Gets the size in bytes of one block, counting every channel.
+	 */
+	public int getBlockSize() {
+		return blockSize(channels, samplesPerBlock);
+	}
+	
+	/**
+	 * Gets how many bytes the encoded data takes up, including padding in the last block.
+	 */
+	public int getEncodedSize() {
+		return blockCount(frames, samplesPerBlock) * getBlockSize();
+	}
+	
+	/**
+	 * Gets the number of samples (not frames) in this Sound.
+	 */
+	@Override
+	public int getSampleCount() {
+		return frames*channels;
+	}
+	
+	/**
+	 * Decodes this Sound onto the heap. A new array is decoded on every call, since keeping one would undo the point
+	 * of compressing; callers that only need to upload this Sound SHOULD NOT use this method.
+	 */
+	@Override
+	public short[] getData() {
+		short[] result = new short[frames*channels];
+		decode(result, 0, frames);
+		return result;
+	}
+	
+	/**
+	 * Decodes the first frames sample frames of this Sound into dest, starting at dest's position and advancing it.
+	 */
+	public void decode(ShortBuffer dest, int frames) {
+		frames = Math.min(frames, this.frames);
+		int pos = dest.position();
+		if (dest.hasArray()) {
+			decode(dest.array(), dest.arrayOffset()+pos, frames);
+		} else {
+			short[] scratch = new short[samplesPerBlock*channels];
+			for(int start=0; start<frames; start+=samplesPerBlock) {
+				int count = Math.min(samplesPerBlock, frames-start);
+				decodeBlock(start/samplesPerBlock, scratch, 0);
+				dest.put(pos + start*channels, scratch, 0, count*channels);
+			}
+		}
+		dest.position(pos + frames*channels);
+	}
+	
+	/**
+	 * Decodes the first frames sample frames of this Sound into dest.
+	 */
+	public void decode(short[] dest, int destOffset, int frames) {
+		frames = Math.min(frames, this.frames);
+		int fullBlocks = frames/samplesPerBlock;
+		for(int block=0; block<fullBlocks; block++) {
+			decodeBlock(block, dest, destOffset + block*samplesPerBlock*channels);
+		}
+		
+		int remaining = frames - fullBlocks*samplesPerBlock;
+		if (remaining>0) {
+			short[] scratch = new short[samplesPerBlock*channels];
+			decodeBlock(fullBlocks, scratch, 0);
+			System.arraycopy(scratch, 0, dest, destOffset + fullBlocks*samplesPerBlock*channels, remaining*channels);
+		}
+	}
+	
+	/**
+	 * Decodes one whole block into dest, which MUST have room for samplesPerBlock frames.
+	 */
+	private void decodeBlock(int block, short[] dest, int destOffset) {
+		ByteBuffer in = blocks;
+		int base = block*getBlockSize();
+		
+		for(int ch=0; ch<channels; ch++) {
+			int header = base + ch*4;
+			int predictor = (short) ((in.get(header) & 0xFF) | (in.get(header+1) << 8));
+			int index = Math.min(88, in.get(header+2) & 0xFF);
+			dest[destOffset+ch] = (short) predictor;
+			
+			int pos = base + channels*4 + ch*4;
+			int frame = 1;
+			for(int group=0; group<(samplesPerBlock-1)/8; group++) {
+				for(int b=0; b<4; b++) {
+					int packed = in.get(pos+b);
+					for(int half=0; half<2; half++) {
+						int nibble = (packed >> (half*4)) & 0xF;
+						int step = STEP_TABLE[index];
+						int diff = step >> 3;
+						if ((nibble & 4)!=0) diff += step;
+						if ((nibble & 2)!=0) diff += step >> 1;
+						if ((nibble & 1)!=0) diff += step >> 2;
+						predictor += ((nibble & 8)!=0) ? -diff : diff;
+						predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+						index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble & 7]));
+						dest[destOffset + frame*channels + ch] = (short) predictor;
+						frame++;
+					}
+				}
+				pos += channels*4;
+			}
+		}
+	}
+	
+	private static int encodeNibble(int sample, int[] predictors, int[] indices, int ch) {
+		int predictor = predictors[ch];
+		int index = indices[ch];
+		int step = STEP_TABLE[index];
+		
+		int delta = sample - predictor;
+		int nibble = 0;
+		if (delta<0) {
+			nibble = 8;
+			delta = -delta;
+		}
+		
+		//Mirror the decoder's arithmetic exactly, so the encoder's predictor never drifts from the decoder's
+		int diff = step >> 3;
+		if (delta>=step) { nibble |= 4; delta -= step; diff += step; }
+		if (delta>=(step >> 1)) { nibble |= 2; delta -= step >> 1; diff += step >> 1; }
+		if (delta>=(step >> 2)) { nibble |= 1; diff += step >> 2; }
+		
+		predictor += ((nibble & 8)!=0) ? -diff : diff;
+		predictors[ch] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+		indices[ch] = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble & 7]));
+		return nibble;
+	}
+	
+	/** Reads a sample, treating everything past the end as silence */
+	private static int sampleAt(short[] pcm, int channels, int frames, int frame, int ch) {
+		return (frame<frames) ? pcm[frame*channels + ch] : 0;
+	}
+	
+	private static int blockCount(int frames, int samplesPerBlock) {
+		return (frames + samplesPerBlock - 1) / samplesPerBlock;
+	}
+	
+	private static int blockSize(int channels, int samplesPerBlock) {
+		return ((samplesPerBlock-1)/2 + 4) * channels;
+	}
+}
@@ -15,7 +15,8 @@ import com.playsawdust.chipper.glow.audio.al.ALAudioSystem;
  * Tagging interface which indicates that a class represents or maintains native resources in the AL.
  * 
  * <p>Methods on instances of these classes MUST ONLY be called from the same thread that the {@link ALAudioSystem}
- * instance was created on, and responsibility for closing or deleting instances SHOULD be carefully considered.
+ * instance was created on, and responsibility for closing or deleting instances SHOULD be carefully considered. Other
+ * threads can drive audio through the system's {@link ALAudioSystem#getCommandQueue() command queue}.
  * 
  * <p>{@link #close()} is the same as {@link #delete()} - both have the same effect of freeing the native resources, and
  * methods on this instance MUST NOT be called after calling either of these methods.
@@ -0,0 +1,62 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A Sound whose samples live in a direct ShortBuffer instead of on the Java heap, such as a view into a memory-mapped
+ * file. The AL can read these samples in place, so uploading one never copies the data through the heap.
+ */
+public class BufferedSound extends Sound {
+	protected final ShortBuffer buffer;
+	
+	/**
+	 * Creates a Sound backed by the provided buffer
+	 * @param frequency the sample frequency, in Hertz
+	 * @param channels  how many audio channels are interleaved in the data
+	 * @param buffer    a direct buffer of 16-bit, native-order samples for all channels, interleaved. The samples are
+	 *                  the remaining elements of the buffer.
+	 */
+	public BufferedSound(int frequency, int channels, ShortBuffer buffer) {
+		super(frequency, channels, null);
+		if (!buffer.isDirect()) throw new IllegalArgumentException("BufferedSound requires a direct buffer.");
+		this.buffer = buffer.slice();
+	}
+	
+	/**
+	 * Gets a view of the sample data. The returned buffer shares its contents with this Sound but has its own position
+	 * and limit.
+	 */
+	public ShortBuffer getBuffer() {
+		return buffer.duplicate();
+	}
+	
+	/**
+	 * Gets the number of samples (not frames) in this Sound.
+	 */
+	@Override
+	public int getSampleCount() {
+		return buffer.remaining();
+	}
+	
+	/**
+	 * Copies the sample data onto the heap. The copy is made on first call and kept, so callers that only need to
+	 * upload this Sound SHOULD use {@link #getBuffer()} instead.
+	 */
+	@Override
+	public short[] getData() {
+		if (data==null) {
+			data = new short[buffer.remaining()];
+			buffer.duplicate().get(data);
+		}
+		return data;
+	}
+}
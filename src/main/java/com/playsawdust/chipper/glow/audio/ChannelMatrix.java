@@ -0,0 +1,249 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+import java.util.Arrays;
+
+/**
+ * A table of gains that converts interleaved audio from one channel layout to another. Each output sample is a
+ * weighted sum of every input sample in the same frame, so any up- or downmix is a single pass with no branching on
+ * channel roles.
+ *
+ * <p>Matrices between the standard layouts described in {@link SampleIterator} are precomputed. The rules are:
+ * <ul>
+ *   <li>Mono is written identically into the front left and right channels of a larger layout
+ *   <li>Stereo is written into the front left and right channels of a larger layout
+ *   <li>Speakers missing from the target layout fold into their neighbors: sides into backs, backs into fronts, and
+ *       center into left and right, each at -3dB. LFE is dropped rather than folded.
+ *   <li>Any layout becomes mono by folding down to stereo and averaging the two channels
+ *   <li>Downmixes are scaled so no output can exceed full scale. This is quieter than we'd like, but avoids the risk
+ *       of overdrive.
+ * </ul>
+ * Channel counts outside the standard layouts map channel-for-channel, dropping or zeroing the extras.
+ */
+public final class ChannelMatrix {
+	public static final int MAX_CHANNELS = 8;
+	
+	private static final int FL = 0, FR = 1, FC = 2, LFE = 3, BL = 4, BR = 5, SL = 6, SR = 7;
+	private static final int[][] LAYOUTS = {
+			null,
+			{ FC },
+			{ FL, FR },
+			null,
+			{ FL, FR, FC, LFE },
+			null,
+			{ FL, FR, FC, LFE, BL, BR },
+			null,
+			{ FL, FR, FC, LFE, BL, BR, SL, SR },
+	};
+	private static final float MINUS_3DB = (float) Math.sqrt(0.5);
+	
+	private static final ChannelMatrix[][] STANDARD = new ChannelMatrix[MAX_CHANNELS+1][MAX_CHANNELS+1];
+	static {
+		for(int from=1; from<=MAX_CHANNELS; from++) {
+			for(int to=1; to<=MAX_CHANNELS; to++) {
+				STANDARD[from][to] = new ChannelMatrix(from, to, buildGains(from, to));
+			}
+		}
+	}
+	
+	private final int inChannels;
+	private final int outChannels;
+	/** outChannels rows of inChannels gains */
+	private final float[] gains;
+	private final boolean identity;
+	
+	/**
+	 * Creates a custom matrix.
+	 * @param gains outChannels rows of inChannels entries each; gains[out*inChannels + in] is how much of input channel
+	 *              in is mixed into output channel out
+	 */
+	public ChannelMatrix(int inChannels, int outChannels, float[] gains) {
+		if (inChannels<1 || outChannels<1) throw new IllegalArgumentException("Matrices need at least one channel on each side.");
+		if (gains.length!=inChannels*outChannels) throw new IllegalArgumentException("Expected "+(inChannels*outChannels)+" gains, got "+gains.length);
+		this.inChannels = inChannels;
+		this.outChannels = outChannels;
+		this.gains = gains.clone();
+		
+		boolean identity = inChannels==outChannels;
+		for(int out=0; out<outChannels && identity; out++) {
+			for(int in=0; in<inChannels; in++) {
+				if (gains[out*inChannels+in] != ((in==out) ? 1f : 0f)) identity = false;
+			}
+		}
+		this.identity = identity;
+	}
+	
+	/**
+	 * Gets the precomputed matrix between two channel counts.
+	 */
+	public static ChannelMatrix of(int inChannels, int outChannels) {
+		if (inChannels<1 || inChannels>MAX_CHANNELS) throw new IllegalArgumentException("Can't remix from "+inChannels+" channels.");
+		if (outChannels<1 || outChannels>MAX_CHANNELS) throw new IllegalArgumentException("Can't remix to "+outChannels+" channels.");
+		return STANDARD[inChannels][outChannels];
+	}
+	
+	public int getInChannels() {
+		return inChannels;
+	}
+	
+	public int getOutChannels() {
+		return outChannels;
+	}
+	
+	/**
+	 * Gets how much of an input channel is mixed into an output channel.
+	 */
+	public float getGain(int inChannel, int outChannel) {
+		return gains[outChannel*inChannels + inChannel];
+	}
+	
+	/**
+	 * Returns true if this matrix passes every channel through unchanged.
+	 */
+	public boolean isIdentity() {
+		return identity;
+	}
+	
+	/**
+	 * Remixes frames of interleaved audio from src into dest. src and dest MUST NOT overlap unless this is an identity
+	 * matrix.
+	 */
+	public void apply(short[] src, int srcOffset, short[] dest, int destOffset, int frames) {
+		if (identity) {
+			System.arraycopy(src, srcOffset, dest, destOffset, frames*inChannels);
+			return;
+		}
+		
+		//The JIT can't unroll loops over a channel count it doesn't know, so the common shapes get their own loops
+		float[] g = gains;
+		if (inChannels==2 && outChannels==1) {
+			float left = g[0];
+			float right = g[1];
+			for(int i=0; i<frames; i++) {
+				int in = srcOffset + i*2;
+				dest[destOffset+i] = toSample(src[in]*left + src[in+1]*right);
+			}
+		} else if (inChannels==1 && outChannels==2) {
+			float left = g[0];
+			float right = g[1];
+			for(int i=0; i<frames; i++) {
+				float sample = src[srcOffset+i];
+				int out = destOffset + i*2;
+				dest[out] = toSample(sample*left);
+				dest[out+1] = toSample(sample*right);
+			}
+		} else if (inChannels==2 && outChannels==2) {
+			float ll = g[0], rl = g[1], lr = g[2], rr = g[3];
+			for(int i=0; i<frames; i++) {
+				int base = i*2;
+				float left = src[srcOffset+base];
+				float right = src[srcOffset+base+1];
+				dest[destOffset+base] = toSample(left*ll + right*rl);
+				dest[destOffset+base+1] = toSample(left*lr + right*rr);
+			}
+		} else {
+			int inCh = inChannels;
+			int outCh = outChannels;
+			for(int i=0; i<frames; i++) {
+				int inBase = srcOffset + i*inCh;
+				int outBase = destOffset + i*outCh;
+				for(int out=0; out<outCh; out++) {
+					int row = out*inCh;
+					float acc = 0f;
+					for(int in=0; in<inCh; in++) {
+						acc += src[inBase+in] * g[row+in];
+					}
+					dest[outBase+out] = toSample(acc);
+				}
+			}
+		}
+	}
+	
+	/** Rounds and saturates without branching */
+	private static short toSample(float value) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+	}
+	
+	private static float[] buildGains(int from, int to) {
+		float[] result = new float[from*to];
+		
+		int[] inLayout = LAYOUTS[from];
+		int[] outLayout = LAYOUTS[to];
+		if (inLayout==null || outLayout==null || from==to) {
+			//Nonstandard layout, or nothing to do: channel for channel
+			for(int i=0; i<Math.min(from, to); i++) result[i*from+i] = 1f;
+			return result;
+		}
+		
+		if (to==1) {
+			//Fold down to stereo, then average
+			float[] stereo = (from==2) ? new float[] { 1f, 0f, 0f, 1f } : buildGains(from, 2);
+			for(int in=0; in<from; in++) result[in] = (stereo[in] + stereo[from+in]) * 0.5f;
+			return result;
+		}
+		
+		if (from==1) {
+			result[indexOf(outLayout, FL)] = 1f;
+			result[indexOf(outLayout, FR)] = 1f;
+			return result;
+		}
+		
+		float[] speakerGains = new float[MAX_CHANNELS];
+		for(int in=0; in<from; in++) {
+			Arrays.fill(speakerGains, 0f);
+			route(inLayout[in], outLayout, 1f, speakerGains);
+			for(int out=0; out<to; out++) result[out*from+in] = speakerGains[outLayout[out]];
+		}
+		
+		//Keep the loudest possible output at or under full scale
+		float maxRow = 0f;
+		for(int out=0; out<to; out++) {
+			float row = 0f;
+			for(int in=0; in<from; in++) row += result[out*from+in];
+			maxRow = Math.max(maxRow, row);
+		}
+		if (maxRow>1f) {
+			for(int i=0; i<result.length; i++) result[i] /= maxRow;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Adds one source speaker's contribution to each speaker in the target layout, folding it into neighbors if the
+	 * target doesn't have it.
+	 */
+	private static void route(int speaker, int[] layout, float gain, float[] speakerGains) {
+		if (indexOf(layout, speaker)>=0) {
+			speakerGains[speaker] += gain;
+			return;
+		}
+		
+		switch(speaker) {
+		case SL: route(BL, layout, gain, speakerGains); break;
+		case SR: route(BR, layout, gain, speakerGains); break;
+		case BL: route(FL, layout, gain*MINUS_3DB, speakerGains); break;
+		case BR: route(FR, layout, gain*MINUS_3DB, speakerGains); break;
+		case FC:
+			route(FL, layout, gain*MINUS_3DB, speakerGains);
+			route(FR, layout, gain*MINUS_3DB, speakerGains);
+			break;
+		default: break; //LFE, or front channels missing from a layout that only has a center
+		}
+	}
+	
+	private static int indexOf(int[] layout, int speaker) {
+		for(int i=0; i<layout.length; i++) {
+			if (layout[i]==speaker) return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+/**
+ * A per-thread scratch frame for the default {@link SampleIterator#next(short[], int, int)} bridge, so that iterators
+ * which only implement the single-frame method don't allocate on every block.
+ */
+final class FrameScratch {
+	/** Enough for 7.1, the widest layout SampleIterator names */
+	private static final int DEFAULT_CHANNELS = 8;
+	
+	private static final ThreadLocal<short[]> SCRATCH = ThreadLocal.withInitial(()->new short[DEFAULT_CHANNELS]);
+	
+	private FrameScratch() {}
+	
+	/**
+	 * Gets this thread's scratch frame, growing it if it's too small to hold the given number of channels. Its contents
+	 * are garbage.
+	 */
+	static short[] get(int channels) {
+		short[] result = SCRATCH.get();
+		if (result.length<channels) {
+			result = new short[channels];
+			SCRATCH.set(result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * A Sound whose samples live in memory allocated with {@link MemoryUtil}, outside the Java heap and out of the garbage
+ * collector's sight. The memory is freed by {@link #close()}, not by the garbage collector, so a NativeSound that's
+ * never closed leaks.
+ *
+ * <p>The AL copies sample data on upload, so once a NativeSound has been uploaded and kept resident with
+ * {@link com.playsawdust.chipper.glow.audio.al.ALAudioSystem#preload(Sound) preload}, it can be closed right away and
+ * will keep playing. A Sound that isn't preloaded may be evicted and need uploading again, and playing it after it's
+ * been closed throws IllegalStateException. Any other use after closing throws the same.
+ *
+ * <p>Closing may be done from any thread, but MUST NOT race with another thread using the Sound.
+ */
+public class NativeSound extends BufferedSound implements AutoCloseable {
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Allocates an uninitialized NativeSound, to be filled in through {@link #getBuffer()}.
+	 * @param frequency the sample frequency, in Hertz
+	 * @param channels  how many audio channels are interleaved in the data
+	 * @param frames    how many sample frames to allocate room for
+	 */
+	public NativeSound(int frequency, int channels, int frames) {
+		super(frequency, channels, MemoryUtil.memAllocShort(Math.multiplyExact(frames, channels)));
+	}
+	
+	/**
+	 * Copies any Sound's samples into a new NativeSound.
+	 */
+	public static NativeSound copyOf(Sound sound) {
+		NativeSound result = new NativeSound(sound.getFrequency(), sound.getChannelCount(), sound.getSampleCount()/sound.getChannelCount());
+		if (sound instanceof BufferedSound) {
+			result.buffer.duplicate().put(((BufferedSound) sound).getBuffer());
+		} else {
+			result.buffer.duplicate().put(sound.getData());
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets a view of the sample data, which may be written to. The returned buffer shares its contents with this Sound
+	 * but has its own position and limit, and MUST NOT be used after this Sound is closed.
+	 * @throws IllegalStateException if this Sound has been closed
+	 */
+	@Override
+	public ShortBuffer getBuffer() {
+		checkOpen();
+		return buffer.duplicate();
+	}
+	
+	/**
+	 * Copies the sample data onto the heap. Unlike other BufferedSounds, a new array is copied on every call, since
+	 * keeping one would undo the point of holding the samples off-heap.
+	 * @throws IllegalStateException if this Sound has been closed
+	 */
+	@Override
+	public short[] getData() {
+		checkOpen();
+		short[] result = new short[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
+	}
+	
+	public boolean isClosed() {
+		return closed.get();
+	}
+	
+	/**
+	 * Frees the native memory. Calling this more than once has no further effect.
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+	
+	private void checkOpen() {
+		if (closed.get()) throw new IllegalStateException("This NativeSound has been closed.");
+	}
+}
@@ -10,8 +10,8 @@
 package com.playsawdust.chipper.glow.audio;
 
 /**
- * Represents a non-seekable ordered sequence of sample data. This data is provided one sample frame at a time. A sample
- * frame is a single sample for each channel in the stream.
+ * Represents a non-seekable ordered sequence of sample data. This data is provided one sample frame at a time, or in
+ * blocks of many frames. A sample frame is a single sample for each channel in the stream.
  * 
  * <p>
  * SampleIterators require opening before use to communicate the desired audio characteristics, and closing after use.
@@ -60,6 +60,43 @@ public interface SampleIterator extends AutoCloseable {
 	 */
 	void next(short[] buffer);
 	
+	/**
+	 * Gets the next several sample frames from this Iterator, writing them interleaved into buffer. This is equivalent
+	 * to calling {@link #next(short[])} once for each frame.
+	 * 
+	 * <p>The default implementation bridges to {@link #next(short[])} through a per-thread scratch frame. It allocates
+	 * that frame the first time it runs on each thread, and again whenever a wider frame is needed, and it still pays one
+	 * call and one copy per frame. Implementations MUST override this method to be allocation-free from the first call,
+	 * and SHOULD override it to process the whole block at once.
+	 * 
+	 * @param buffer the destination for the sample frames. Must hold at least offset + frames * channels entries.
+	 * @param offset the index in buffer where the first sample of the first frame will be written
+	 * @param frames the number of sample frames to write
+	 */
+	default void next(short[] buffer, int offset, int frames) {
+		int channels = getChannelCount();
+		short[] frame = FrameScratch.get(channels);
+		for(int i=0; i<frames; i++) {
+			next(frame);
+			System.arraycopy(frame, 0, buffer, offset + i*channels, channels);
+		}
+	}
+	
+	/**
+	 * Returns true if this Iterator has run out of sample data and will only produce zeroes from now on. Sources with no
+	 * natural end, like generators and effect chains, never become exhausted. Consumers such as streaming AL sources use
+	 * this to know when to stop asking for more data.
+	 */
+	default boolean isExhausted() {
+		return false;
+	}
+	
+	/**
+	 * Gets the number of channels this Iterator was opened with, or zero if it is closed. The default block
+	 * {@link #next(short[], int, int)} uses this to know how wide each frame is.
+	 */
+	int getChannelCount();
+	
 	/**
 	 * Closes this Iterator, invalidates any format information or buffer data it maintains, and releases any resources
 	 * associated with this Iterator.
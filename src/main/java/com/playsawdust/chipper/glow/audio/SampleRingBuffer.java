@@ -0,0 +1,173 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free queue of interleaved sample frames between exactly one producer thread and exactly one
+ * consumer thread, typically a decoder thread and the AL thread. Neither side ever blocks, spins or allocates: a write
+ * stores as many frames as there is room for, a read takes as many as are ready, and each reports how many it moved.
+ *
+ * <p>The read and write positions are frame counters which only ever grow, so full and empty are never ambiguous. Each
+ * side publishes its own position with a release store and reads the other side's with an acquire load, and keeps a
+ * private copy of the other side's last known position so that most calls touch no shared memory at all. The positions
+ * sit 128 bytes apart, so the two threads never contend for a cache line.
+ *
+ * <p>Calling a write method from more than one thread, or a read method from more than one thread, is not supported.
+ */
+public final class SampleRingBuffer {
+	/** Array slots are 8 bytes, so 16 slots apart keeps each side's data on its own pair of cache lines */
+	private static final int STRIDE = 16;
+	private static final int WRITE = STRIDE;
+	private static final int PRODUCER_CACHED_READ = STRIDE+1;
+	private static final int READ = STRIDE*2;
+	private static final int CONSUMER_CACHED_WRITE = STRIDE*2+1;
+	
+	private final short[] data;
+	private final int channels;
+	private final int capacity;
+	private final int mask;
+	private final AtomicLongArray positions = new AtomicLongArray(STRIDE*3);
+	
+	/**
+	 * Creates a ring buffer.
+	 * @param frames   the minimum number of frames it should hold; this is rounded up to a power of two
+	 * @param channels how many samples make up each frame
+	 */
+	public SampleRingBuffer(int frames, int channels) {
+		if (frames<1 || frames>(1 << 30)/channels) throw new IllegalArgumentException("Can't hold "+frames+" frames of "+channels+" channels.");
+		int capacity = 1;
+		while(capacity<frames) capacity <<= 1;
+		this.capacity = capacity;
+		this.mask = capacity-1;
+		this.channels = channels;
+		this.data = new short[capacity*channels];
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getChannelCount() {
+		return channels;
+	}
+	
+	/**
+	 * Gets how many frames could be written right now. Only meaningful to the producer; to the consumer it can only
+	 * grow before it's acted on.
+	 */
+	public int getWritable() {
+		return capacity - (int) (positions.getPlain(WRITE) - positions.getAcquire(READ));
+	}
+	
+	/**
+	 * Gets how many frames could be read right now. Only meaningful to the consumer; to the producer it can only
+	 * shrink before it's acted on.
+	 */
+	public int getReadable() {
+		return (int) (positions.getAcquire(WRITE) - positions.getPlain(READ));
+	}
+	
+	/**
+	 * Copies up to frames frames into the buffer. MUST only be called from the producer thread.
+	 * @return how many frames were written, which is less than asked if the buffer filled up
+	 */
+	public int write(short[] src, int offset, int frames) {
+		long write = positions.getPlain(WRITE);
+		int count = Math.min(frames, writable(write, frames));
+		if (count==0) return 0;
+		
+		int start = (int) write & mask;
+		int first = Math.min(count, capacity-start);
+		System.arraycopy(src, offset, data, start*channels, first*channels);
+		if (first<count) System.arraycopy(src, offset + first*channels, data, 0, (count-first)*channels);
+		
+		positions.setRelease(WRITE, write+count);
+		return count;
+	}
+	
+	/**
+	 * Has a SampleIterator write up to frames frames straight into the buffer, without an intermediate copy. The
+	 * iterator MUST be open with this buffer's channel count. MUST only be called from the producer thread.
+	 * @return how many frames were written, which is less than asked if the buffer filled up
+	 */
+	public int write(SampleIterator source, int frames) {
+		long write = positions.getPlain(WRITE);
+		int count = Math.min(frames, writable(write, frames));
+		if (count==0) return 0;
+		
+		int start = (int) write & mask;
+		int first = Math.min(count, capacity-start);
+		source.next(data, start*channels, first);
+		if (first<count) source.next(data, 0, count-first);
+		
+		positions.setRelease(WRITE, write+count);
+		return count;
+	}
+	
+	/**
+	 * Copies up to frames frames out of the buffer. MUST only be called from the consumer thread.
+	 * @return how many frames were read, which is less than asked if the buffer ran dry
+	 */
+	public int read(short[] dest, int offset, int frames) {
+		long read = positions.getPlain(READ);
+		int count = Math.min(frames, readable(read, frames));
+		if (count==0) return 0;
+		
+		int start = (int) read & mask;
+		int first = Math.min(count, capacity-start);
+		System.arraycopy(data, start*channels, dest, offset, first*channels);
+		if (first<count) System.arraycopy(data, 0, dest, offset + first*channels, (count-first)*channels);
+		
+		positions.setRelease(READ, read+count);
+		return count;
+	}
+	
+	/**
+	 * Discards every frame that's ready to read. MUST only be called from the consumer thread.
+	 * @return how many frames were discarded
+	 */
+	public int skipAll() {
+		long read = positions.getPlain(READ);
+		long write = positions.getAcquire(WRITE);
+		positions.setPlain(CONSUMER_CACHED_WRITE, write);
+		positions.setRelease(READ, write);
+		return (int) (write-read);
+	}
+	
+	/**
+	 * Gets how much room the producer has, only going to the shared read position if the cached one says there isn't
+	 * room for everything wanted.
+	 */
+	private int writable(long write, int wanted) {
+		int free = capacity - (int) (write - positions.getPlain(PRODUCER_CACHED_READ));
+		if (free<wanted) {
+			long read = positions.getAcquire(READ);
+			positions.setPlain(PRODUCER_CACHED_READ, read);
+			free = capacity - (int) (write - read);
+		}
+		return free;
+	}
+	
+	/**
+	 * Gets how many frames the consumer has, only going to the shared write position if the cached one says there
+	 * aren't enough for everything wanted.
+	 */
+	private int readable(long read, int wanted) {
+		int ready = (int) (positions.getPlain(CONSUMER_CACHED_WRITE) - read);
+		if (ready<wanted) {
+			long write = positions.getAcquire(WRITE);
+			positions.setPlain(CONSUMER_CACHED_WRITE, write);
+			ready = (int) (write - read);
+		}
+		return ready;
+	}
+}
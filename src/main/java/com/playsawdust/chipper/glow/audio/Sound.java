@@ -42,21 +42,40 @@ public class Sound {
 		return data;
 	}
 	
+	/**
+	 * Gets the number of samples (not frames) in this Sound.
+	 */
+	public int getSampleCount() {
+		return data.length;
+	}
+	
+	/**
+	 * Folds this Sound down to one channel. Equivalent to {@code remix(1)}.
+	 */
 	public Sound toMono() {
-		if (channels==1) return this;
+		return remix(1);
+	}
+	
+	/**
+	 * Converts this Sound to a different number of channels using the standard matrix for the two layouts.
+	 * @see ChannelMatrix#of(int, int)
+	 */
+	public Sound remix(int channels) {
+		if (channels==this.channels) return this;
+		return remix(ChannelMatrix.of(this.channels, channels));
+	}
+	
+	/**
+	 * Converts this Sound to a different channel layout using a custom matrix, whose input side MUST match this Sound.
+	 */
+	public Sound remix(ChannelMatrix matrix) {
+		if (matrix.getInChannels()!=channels) throw new IllegalArgumentException("Matrix expects "+matrix.getInChannels()+" channels, but this Sound has "+channels+".");
 		
-		short[] monoData = new short[data.length/channels];
-		for(int i=0; i<monoData.length; i++) {
-			int src = i*channels;
-			int avgSample = 0;
-			for(int j=0; j<channels; j++) {
-				int loc = src+j;
-				if (loc>=data.length) continue;
-				avgSample+= data[src+j];
-			}
-			monoData[i] = (short) (avgSample / channels); //This will be quieter than we'd like, but avoids the risk of overdrive.
-		}
+		short[] data = getData();
+		int frames = data.length/channels;
+		short[] result = new short[frames*matrix.getOutChannels()];
+		matrix.apply(data, 0, result, 0, frames);
 		
-		return new Sound(frequency, 1, monoData);
+		return new Sound(frequency, matrix.getOutChannels(), result);
 	}
 }
@@ -9,11 +9,19 @@
 
 package com.playsawdust.chipper.glow.audio.al;
 
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
+import org.lwjgl.openal.AL;
 import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+import org.lwjgl.openal.ALCapabilities;
+import org.lwjgl.openal.EXTIma4;
+import org.lwjgl.openal.SOFTBlockAlignment;
 
+import com.playsawdust.chipper.glow.audio.AdpcmSound;
 import com.playsawdust.chipper.glow.audio.AudioResource;
+import com.playsawdust.chipper.glow.audio.BufferedSound;
 import com.playsawdust.chipper.glow.audio.Sound;
 
 /**
@@ -22,13 +30,84 @@ import com.playsawdust.chipper.glow.audio.Sound;
 public class ALAudioBuffer implements AudioResource {
 	private final int handle;
 	private ArrayList<ALAudioSource> users = new ArrayList<>();
+	/** If this buffer is shared through the ALAudioSystem's cache, the Sound it holds */
+	Sound cachedSound = null;
+	/** How many times this buffer has been preloaded through the ALAudioSystem, which keeps it alive without users */
+	int pins = 0;
+	private int size = 0;
 	
 	public ALAudioBuffer() {
 		this.handle = AL10.alGenBuffers();
 	}
 	
+	/**
+	 * Uploads a whole Sound into this buffer. ADPCM Sounds stay compressed if the AL supports it, and are otherwise
+	 * decoded onto the heap first.
+	 */
 	public void loadEntire(Sound sound) {
-		AL10.alBufferData(handle, (sound.getChannelCount()==1)? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16, sound.getData(), sound.getFrequency());
+		if (sound instanceof AdpcmSound) {
+			AdpcmSound adpcm = (AdpcmSound) sound;
+			if (!loadCompressed(adpcm)) {
+				int format = (sound.getChannelCount()==1)? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+				AL10.alBufferData(handle, format, adpcm.getData(), sound.getFrequency());
+				size = sound.getSampleCount()*2;
+			}
+			return;
+		}
+		
+		int format = (sound.getChannelCount()==1)? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+		if (sound instanceof BufferedSound) {
+			//The AL reads straight out of the direct buffer, which may be a mapped file or native memory
+			AL10.alBufferData(handle, format, ((BufferedSound) sound).getBuffer(), sound.getFrequency());
+		} else {
+			AL10.alBufferData(handle, format, sound.getData(), sound.getFrequency());
+		}
+		size = sound.getSampleCount()*2;
+	}
+	
+	/**
+	 * Returns true if the current AL can hold this ADPCM Sound without decoding it.
+	 */
+	public static boolean canLoadCompressed(AdpcmSound sound) {
+		ALCapabilities caps = AL.getCapabilities();
+		if (!caps.AL_EXT_IMA4) return false;
+		return sound.getSamplesPerBlock()==AdpcmSound.DEFAULT_SAMPLES_PER_BLOCK || caps.AL_SOFT_block_alignment;
+	}
+	
+	/**
+	 * Uploads an ADPCM Sound still compressed, if the AL supports it.
+	 * @return true if the Sound was uploaded, false if it must be decoded first
+	 */
+	public boolean loadCompressed(AdpcmSound sound) {
+		if (!canLoadCompressed(sound)) return false;
+		
+		int format = (sound.getChannelCount()==1) ? EXTIma4.AL_FORMAT_MONO_IMA4 : EXTIma4.AL_FORMAT_STEREO_IMA4;
+		if (AL.getCapabilities().AL_SOFT_block_alignment) {
+			AL11.alBufferi(handle, SOFTBlockAlignment.AL_UNPACK_BLOCK_ALIGNMENT_SOFT, sound.getSamplesPerBlock());
+		}
+		AL10.alBufferData(handle, format, sound.getBlocks(), sound.getFrequency());
+		size = sound.getEncodedSize();
+		return true;
+	}
+	
+	/**
+	 * Uploads an ADPCM Sound as 16-bit PCM, decoding it through the provided buffer instead of the heap.
+	 * @param scratch a direct buffer with room for every sample of the Sound. Its contents are overwritten.
+	 */
+	void loadDecoded(AdpcmSound sound, ShortBuffer scratch) {
+		int format = (sound.getChannelCount()==1)? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+		scratch.clear();
+		sound.decode(scratch, sound.getSampleCount()/sound.getChannelCount());
+		scratch.flip();
+		AL10.alBufferData(handle, format, scratch, sound.getFrequency());
+		size = sound.getSampleCount()*2;
+	}
+	
+	/**
+	 * Gets how many bytes the AL holds for this buffer, as of the last upload.
+	 */
+	public int getSize() {
+		return size;
 	}
 	
 	public void addUser(ALAudioSource source) {
@@ -39,13 +118,17 @@ public class ALAudioBuffer implements AudioResource {
 		users.remove(source);
 	}
 	
+	public int getUserCount() {
+		return users.size();
+	}
+	
 	public boolean isInUse() {
-		return !users.isEmpty();
+		return !users.isEmpty() || pins>0;
 	}
 	
 	public boolean checkInUse() {
 		users.removeIf((it)->it.getState()==ALAudioSource.State.STOPPED);
-		return !users.isEmpty();
+		return !users.isEmpty() || pins>0;
 	}
 	
 	public int getHandle() {
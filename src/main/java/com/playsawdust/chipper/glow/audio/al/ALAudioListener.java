@@ -21,79 +21,90 @@ import org.lwjgl.system.MemoryStack;
 import com.playsawdust.chipper.glow.audio.AudioResource;
 
 public class ALAudioListener implements AudioResource {
+	/*
+	 * Shadow copies of the AL's listener properties. Setters only touch these; the AL sees the changes when the system
+	 * flushes them, and getters never have to ask the driver.
+	 */
+	private float gain = 1.0f;
+	private final Vector3f position = new Vector3f();
+	private final Vector3f velocity = new Vector3f();
+	private final Vector3f at = new Vector3f(0, 0, -1);
+	private final Vector3f up = new Vector3f(0, 1, 0);
+	private boolean dirtyGain = false;
+	private boolean dirtyPosition = false;
+	private boolean dirtyVelocity = false;
+	private boolean dirtyOrientation = false;
 	
 	protected ALAudioListener() {
 	}
 	
 	public ALAudioListener setGain(float gain) {
 		if (gain<0.0f) gain=0.0f; //Can't be negative
-		AL10.alListenerf(AL10.AL_GAIN, gain);
+		if (this.gain==gain) return this;
+		this.gain = gain;
+		dirtyGain = true;
 		return this;
 	}
 	
 	public ALAudioListener setPosition(Vector3dc pos) {
-		AL10.alListener3f(AL10.AL_POSITION, (float) pos.x(), (float) pos.y(), (float) pos.z());
-		return this;
+		return setPosition((float) pos.x(), (float) pos.y(), (float) pos.z());
 	}
 	
 	public ALAudioListener setPosition(Vector3fc pos) {
-		AL10.alListener3f(AL10.AL_POSITION, pos.x(), pos.y(), pos.z());
-		return this;
+		return setPosition(pos.x(), pos.y(), pos.z());
 	}
 	
 	public ALAudioListener setPosition(float x, float y, float z) {
-		AL10.alListener3f(AL10.AL_POSITION, x, y, z);
+		if (position.x==x && position.y==y && position.z==z) return this;
+		position.set(x, y, z);
+		dirtyPosition = true;
 		return this;
 	}
 	
 	public ALAudioListener setVelocity(Vector3dc v) {
-		AL10.alListener3f(AL10.AL_VELOCITY, (float) v.x(), (float) v.y(), (float) v.z());
-		return this;
+		return setVelocity((float) v.x(), (float) v.y(), (float) v.z());
 	}
 	
 	public ALAudioListener setVelocity(Vector3fc v) {
-		AL10.alListener3f(AL10.AL_VELOCITY, v.x(), v.y(), v.z());
-		return this;
+		return setVelocity(v.x(), v.y(), v.z());
 	}
 	
 	public ALAudioListener setVelocity(float x, float y, float z) {
-		AL10.alListener3f(AL10.AL_VELOCITY, x, y, z);
+		if (velocity.x==x && velocity.y==y && velocity.z==z) return this;
+		velocity.set(x, y, z);
+		dirtyVelocity = true;
 		return this;
 	}
 	
 	public ALAudioListener setOrientation(Vector3f at, Vector3f up) {
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			
-			FloatBuffer buf = stack.floats(6);
-			at.get(0, buf);
-			up.get(3, buf);
-			buf.position(0);
-			
-			AL10.alListenerfv(AL10.AL_ORIENTATION, buf);
-		}
-		
+		if (this.at.equals(at) && this.up.equals(up)) return this;
+		this.at.set(at);
+		this.up.set(up);
+		dirtyOrientation = true;
 		return this;
 	}
 	
 	
 	public float getGain() {
-		return AL10.alGetListenerf(AL10.AL_GAIN);
+		return gain;
 	}
 	
 	public Vector3f getPosition() {
-		return getVector3f(AL10.AL_POSITION, null);
+		return getPosition(null);
 	}
 	
 	public Vector3f getPosition(Vector3f dest) {
-		return getVector3f(AL10.AL_POSITION, dest);
+		if (dest==null) dest = new Vector3f();
+		return dest.set(position);
 	}
 	
 	public Vector3f getVelocity() {
-		return getVector3f(AL10.AL_VELOCITY, null);
+		return getVelocity(null);
 	}
 	
 	public Vector3f getVelocity(Vector3f dest) {
-		return getVector3f(AL10.AL_VELOCITY, dest);
+		if (dest==null) dest = new Vector3f();
+		return dest.set(velocity);
 	}
 	
 	public Vector3f getLookAt() {
@@ -102,15 +113,7 @@ public class ALAudioListener implements AudioResource {
 	
 	public Vector3f getLookAt(Vector3f dest) {
 		if (dest==null) dest = new Vector3f();
-		
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			FloatBuffer buf = stack.mallocFloat(6);
-			
-			AL10.alGetListenerfv(AL10.AL_ORIENTATION, buf);
-			dest.set(0, buf);
-		}
-		
-		return dest;
+		return dest.set(at);
 	}
 	
 	public Vector3f getUp() {
@@ -119,43 +122,38 @@ public class ALAudioListener implements AudioResource {
 	
 	public Vector3f getUp(Vector3f dest) {
 		if (dest==null) dest = new Vector3f();
-		
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			FloatBuffer buf = stack.mallocFloat(6);
-			
-			AL10.alGetListenerfv(AL10.AL_ORIENTATION, buf);
-			dest.set(3, buf);
-		}
-		
-		return dest;
+		return dest.set(up);
 	}
 	
 	public Quaternionf getOrientation(Quaternionf result) {
 		if (result==null) result = new Quaternionf();
-		
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			FloatBuffer buf = stack.mallocFloat(6);
-			
-			AL10.alGetListenerfv(AL10.AL_ORIENTATION, buf);
-			result.identity().lookAlong(buf.get(0), buf.get(1), buf.get(2), buf.get(3), buf.get(4), buf.get(5));
+		return result.identity().lookAlong(at, up);
+	}
+	
+	boolean isDirty() {
+		return dirtyGain || dirtyPosition || dirtyVelocity || dirtyOrientation;
+	}
+	
+	/**
+	 * Sends any properties changed since the last flush to the AL. This happens once per {@link ALAudioSystem#poll()},
+	 * batched together with the sources' changes.
+	 */
+	void flush() {
+		if (dirtyGain) AL10.alListenerf(AL10.AL_GAIN, gain);
+		if (dirtyPosition) AL10.alListener3f(AL10.AL_POSITION, position.x, position.y, position.z);
+		if (dirtyVelocity) AL10.alListener3f(AL10.AL_VELOCITY, velocity.x, velocity.y, velocity.z);
+		if (dirtyOrientation) {
+			try (MemoryStack stack = MemoryStack.stackPush()) {
+				FloatBuffer buf = stack.floats(at.x, at.y, at.z, up.x, up.y, up.z);
+				AL10.alListenerfv(AL10.AL_ORIENTATION, buf);
+			}
 		}
-		
-		return result;
+		dirtyGain = false;
+		dirtyPosition = false;
+		dirtyVelocity = false;
+		dirtyOrientation = false;
 	}
 	
-	
-	private static Vector3f getVector3f(int property, Vector3f dest) {
-		if (dest==null) dest = new Vector3f();
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			FloatBuffer buf = stack.mallocFloat(3);
-			AL10.alGetListenerfv(property, buf);
-			
-			dest.set(buf);
-		}
-		
-		return dest;
-	}
-
 	@Override
 	public void delete() {
 		/* 
@@ -9,31 +9,67 @@
 
 package com.playsawdust.chipper.glow.audio.al;
 
-import java.nio.IntBuffer;
-
 import org.joml.Vector3dc;
+import org.joml.Vector3f;
 import org.joml.Vector3fc;
 import org.lwjgl.openal.AL10;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.openal.AL11;
 
+import com.playsawdust.chipper.glow.audio.AudioException;
 import com.playsawdust.chipper.glow.audio.AudioResource;
+import com.playsawdust.chipper.glow.audio.SampleIterator;
 import com.playsawdust.chipper.glow.audio.Sound;
 
 import blue.endless.tinyevents.RunnableEvent;
 
 public class ALAudioSource implements AudioResource {
+	/** How many AL buffers a stream keeps queued by default */
+	public static final int DEFAULT_STREAM_BUFFERS = 4;
+	/** How many sample frames each streaming buffer holds by default; about 85msec at 48KHz */
+	public static final int DEFAULT_STREAM_FRAMES = 4096;
+	
 	final int handle;
+	private final ALAudioSystem system;
 	private ALAudioBuffer buffer = null;
-	private ALAudioBuffer backBuffer = null;
+	private ALAudioBuffer[] streamBuffers = null;
 	private boolean streaming = false;
+	private SampleIterator stream = null;
+	private short[] streamBlock = null;
+	private int streamFormat = 0;
+	private int streamFrequency = 0;
+	private int streamFrames = 0;
 	private boolean deleted = false;
 	private State lastState = State.INITIAL;
+	/** The AL's state for this source as of the last query. The system refreshes this once per poll. */
+	State polledState = State.INITIAL;
+	/** This source's index in the system's active pool, or -1 */
+	int poolIndex = -1;
+	
+	private static final int DIRTY_PITCH    = 1 << 0;
+	private static final int DIRTY_GAIN     = 1 << 1;
+	private static final int DIRTY_POSITION = 1 << 2;
+	private static final int DIRTY_VELOCITY = 1 << 3;
+	private static final int DIRTY_RELATIVE = 1 << 4;
+	private static final int DIRTY_LOOPING  = 1 << 5;
+	
+	/*
+	 * Shadow copies of the AL's source properties. Setters only touch these and mark them dirty; the AL sees the changes
+	 * when the system flushes them, and getters never have to ask the driver.
+	 */
+	private float pitch = 1.0f;
+	private float gain = 1.0f;
+	private final Vector3f position = new Vector3f();
+	private final Vector3f velocity = new Vector3f();
+	private boolean relative = false;
+	private boolean looping = false;
+	private int dirty = 0;
 	
 	public RunnableEvent onStop = RunnableEvent.create();
 	
 	
 	
-	protected ALAudioSource() {
+	protected ALAudioSource(ALAudioSystem system) {
+		this.system = system;
 		this.handle = AL10.alGenSources();
 	}
 	
@@ -47,6 +83,7 @@ public class ALAudioSource implements AudioResource {
 		setPosition(0, 0, 0);
 		setVelocity(0, 0, 0);
 		setRelative(false);
+		setLooping(false);
 		
 		lastState = State.STOPPED;
 		onStop = RunnableEvent.create(); //Dump all listeners
@@ -56,7 +93,9 @@ public class ALAudioSource implements AudioResource {
 	 * Sets the pitch multiplier for this source. The default is 1.0f
 	 */
 	public ALAudioSource setPitch(float pitch) {
-		AL10.alSourcef(handle, AL10.AL_PITCH, pitch);
+		if (this.pitch==pitch) return this;
+		this.pitch = pitch;
+		markDirty(DIRTY_PITCH);
 		return this;
 	}
 	
@@ -64,52 +103,128 @@ public class ALAudioSource implements AudioResource {
 	 * Sets the gain of this source. The default of 1.0f is 100%
 	 */
 	public ALAudioSource setGain(float gain) {
-		AL10.alSourcef(handle, AL10.AL_GAIN, gain);
+		if (this.gain==gain) return this;
+		this.gain = gain;
+		markDirty(DIRTY_GAIN);
 		return this;
 	}
 	
 	public ALAudioSource setPosition(Vector3dc position) {
-		AL10.alSource3f(handle, AL10.AL_POSITION, (float) position.x(), (float) position.y(), (float) position.z());
-		return this;
+		return setPosition((float) position.x(), (float) position.y(), (float) position.z());
 	}
 	
 	public ALAudioSource setPosition(Vector3fc position) {
-		AL10.alSource3f(handle, AL10.AL_POSITION, position.x(), position.y(), position.z());
-		return this;
+		return setPosition(position.x(), position.y(), position.z());
 	}
 	
 	public ALAudioSource setPosition(float x, float y, float z) {
-		AL10.alSource3f(handle, AL10.AL_POSITION, x, y, z);
+		if (position.x==x && position.y==y && position.z==z) return this;
+		position.set(x, y, z);
+		markDirty(DIRTY_POSITION);
 		return this;
 	}
 	
 	public ALAudioSource setVelocity(Vector3dc v) {
-		AL10.alSource3f(handle, AL10.AL_VELOCITY, (float) v.x(), (float) v.y(), (float) v.z());
-		return this;
+		return setVelocity((float) v.x(), (float) v.y(), (float) v.z());
 	}
 	
 	public ALAudioSource setVelocity(Vector3fc v) {
-		AL10.alSource3f(handle, AL10.AL_VELOCITY, v.x(), v.y(), v.z());
-		return this;
+		return setVelocity(v.x(), v.y(), v.z());
 	}
 	
 	public ALAudioSource setVelocity(float x, float y, float z) {
-		AL10.alSource3f(handle, AL10.AL_VELOCITY, x, y, z);
+		if (velocity.x==x && velocity.y==y && velocity.z==z) return this;
+		velocity.set(x, y, z);
+		markDirty(DIRTY_VELOCITY);
 		return this;
 	}
 	
 	public ALAudioSource setRelative(boolean relative) {
-		AL10.alSourcei(handle, AL10.AL_SOURCE_RELATIVE, (relative) ? AL10.AL_TRUE : AL10.AL_FALSE);
+		if (this.relative==relative) return this;
+		this.relative = relative;
+		markDirty(DIRTY_RELATIVE);
 		return this;
 	}
 	
-	public State getState() {
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			IntBuffer buf = stack.mallocInt(1);
-			AL10.alGetSourcei(handle, AL10.AL_SOURCE_STATE, buf);
-			
-			return State.valueOf(buf.get(0));
+	/**
+	 * Sets whether this source starts over from the beginning when it reaches the end of its Sound. Has no effect on
+	 * streams.
+	 */
+	public ALAudioSource setLooping(boolean looping) {
+		if (this.looping==looping) return this;
+		this.looping = looping;
+		markDirty(DIRTY_LOOPING);
+		return this;
+	}
+	
+	public float getPitch() {
+		return pitch;
+	}
+	
+	public float getGain() {
+		return gain;
+	}
+	
+	public Vector3fc getPosition() {
+		return position;
+	}
+	
+	public Vector3fc getVelocity() {
+		return velocity;
+	}
+	
+	public boolean isRelative() {
+		return relative;
+	}
+	
+	public boolean isLooping() {
+		return looping;
+	}
+	
+	private void markDirty(int property) {
+		if (dirty==0) system.markDirty(this);
+		dirty |= property;
+	}
+	
+	/**
+	 * Sends any properties changed since the last flush to the AL. This normally happens once per
+	 * {@link ALAudioSystem#poll()}, batched together with every other source's changes.
+	 */
+	void flush() {
+		if (dirty==0 || deleted) {
+			dirty = 0;
+			return;
 		}
+		
+		if ((dirty & DIRTY_PITCH)!=0) AL10.alSourcef(handle, AL10.AL_PITCH, pitch);
+		if ((dirty & DIRTY_GAIN)!=0) AL10.alSourcef(handle, AL10.AL_GAIN, gain);
+		if ((dirty & DIRTY_POSITION)!=0) AL10.alSource3f(handle, AL10.AL_POSITION, position.x, position.y, position.z);
+		if ((dirty & DIRTY_VELOCITY)!=0) AL10.alSource3f(handle, AL10.AL_VELOCITY, velocity.x, velocity.y, velocity.z);
+		if ((dirty & DIRTY_RELATIVE)!=0) AL10.alSourcei(handle, AL10.AL_SOURCE_RELATIVE, (relative) ? AL10.AL_TRUE : AL10.AL_FALSE);
+		if ((dirty & DIRTY_LOOPING)!=0) AL10.alSourcei(handle, AL10.AL_LOOPING, (looping && !streaming) ? AL10.AL_TRUE : AL10.AL_FALSE);
+		dirty = 0;
+	}
+	
+	/**
+	 * Gets how far into the current Sound this source is, in seconds.
+	 */
+	public float getPlaybackPosition() {
+		return AL10.alGetSourcef(handle, AL11.AL_SEC_OFFSET);
+	}
+	
+	/**
+	 * Asks the AL for the current state of this source.
+	 */
+	public State getState() {
+		refreshState();
+		return polledState;
+	}
+	
+	/**
+	 * Queries the AL for this source's state and caches it in {@link #polledState}.
+	 */
+	void refreshState() {
+		polledState = State.valueOf(AL10.alGetSourcei(handle, AL10.AL_SOURCE_STATE));
 	}
 	
 	public boolean isStreaming() {
@@ -127,22 +242,161 @@ public class ALAudioSource implements AudioResource {
 	}*/
 	
 	public void playSound(Sound sound) {
-		if (buffer==null) {
-			buffer = new ALAudioBuffer();
+		playSound(sound, 0f);
+	}
+	
+	/**
+	 * Plays a Sound starting partway through.
+	 * @param sound   the Sound to play
+	 * @param seconds how far into the Sound to start, in seconds
+	 */
+	public void playSound(Sound sound, float seconds) {
+		AL10.alSourceStop(handle);
+		if (streaming) endStream();
+		
+		if (buffer==null || buffer.cachedSound!=sound) {
+			AL10.alSourcei(handle, AL10.AL_BUFFER, 0);
+			releaseBuffer();
+			buffer = system.acquireBuffer(sound, this);
 		}
-		AL10.alBufferData(buffer.getHandle(), (sound.getChannelCount()==1) ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16, sound.getData(), sound.getFrequency());
 		
-		AL10.alSourceStop(handle);
 		AL10.alSourcei(handle, AL10.AL_BUFFER, buffer.getHandle());
+		if (seconds>0) AL10.alSourcef(handle, AL11.AL_SEC_OFFSET, seconds);
+		flush(); //Don't let a new sound start with stale properties
 		AL10.alSourcePlay(handle);
 		lastState = State.PLAYING;
+		polledState = State.PLAYING;
 		
 		int error = AL10.alGetError();
 		if (error!=0) System.out.println("Source error "+error);
 	}
 	
+	/**
+	 * Plays audio pulled from a SampleIterator, keeping only a few small buffers queued in the AL instead of uploading
+	 * the whole sound at once. The iterator is opened by this call, refilled during {@link #poll()}, and closed once
+	 * playback stops, either because the iterator is exhausted or because this source was stopped.
+	 * 
+	 * @param iterator  a closed SampleIterator to pull sample data from
+	 * @param frequency the sample frequency to open the iterator with
+	 * @param channels  the channel count to open the iterator with. MUST be 1 or 2.
+	 * @throws AudioException if the AL rejects the stream, in which case the iterator is closed again
+	 */
+	public void playStream(SampleIterator iterator, int frequency, int channels) throws AudioException {
+		playStream(iterator, frequency, channels, DEFAULT_STREAM_BUFFERS, DEFAULT_STREAM_FRAMES);
+	}
+	
+	/**
+	 * Plays audio pulled from a SampleIterator, keeping bufferCount buffers of framesPerBuffer sample frames queued in
+	 * the AL. More or larger buffers tolerate longer gaps between polls, at the cost of latency and native memory.
+	 * 
+	 * @throws AudioException if the AL rejects the stream, in which case the iterator is closed again
+	 * @see #playStream(SampleIterator, int, int)
+	 */
+	public void playStream(SampleIterator iterator, int frequency, int channels, int bufferCount, int framesPerBuffer) throws AudioException {
+		if (channels<1 || channels>2) throw new IllegalArgumentException("AL streams must be mono or stereo, not "+channels+" channels.");
+		if (bufferCount<2) throw new IllegalArgumentException("Streaming needs at least two buffers.");
+		
+		AL10.alGetError(); //Anything already pending wasn't caused by this stream
+		AL10.alSourceStop(handle);
+		if (streaming) endStream();
+		AL10.alSourcei(handle, AL10.AL_BUFFER, 0);
+		releaseBuffer();
+		
+		if (streamBuffers==null || streamBuffers.length!=bufferCount) {
+			deleteStreamBuffers();
+			streamBuffers = new ALAudioBuffer[bufferCount];
+			for(int i=0; i<bufferCount; i++) streamBuffers[i] = new ALAudioBuffer();
+		}
+		if (streamBlock==null || streamBlock.length!=framesPerBuffer*channels) {
+			streamBlock = new short[framesPerBuffer*channels];
+		}
+		streamFormat = (channels==1) ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+		streamFrequency = frequency;
+		streamFrames = framesPerBuffer;
+		
+		iterator.open(frequency, channels);
+		stream = iterator;
+		streaming = true;
+		
+		for(ALAudioBuffer streamBuffer : streamBuffers) {
+			queueStreamBuffer(streamBuffer.getHandle());
+			if (stream.isExhausted()) break;
+		}
+		
+		markDirty(DIRTY_LOOPING); //Queued buffers must never loop
+		flush();
+		AL10.alSourcePlay(handle);
+		lastState = State.PLAYING;
+		polledState = State.PLAYING;
+		
+		try {
+			ALAudioSystem.checkErrorAL();
+		} catch (AudioException ex) {
+			AL10.alSourceStop(handle);
+			endStream();
+			lastState = State.STOPPED;
+			polledState = State.STOPPED;
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Refills any stream buffers the AL has finished playing, and restarts playback if the queue ran dry before the
+	 * stream ended.
+	 */
+	void updateStream() {
+		if (!streaming) return;
+		
+		int processed = AL10.alGetSourcei(handle, AL10.AL_BUFFERS_PROCESSED);
+		for(int i=0; i<processed; i++) {
+			int finished = AL10.alSourceUnqueueBuffers(handle);
+			if (!stream.isExhausted()) queueStreamBuffer(finished);
+		}
+		
+		if (!stream.isExhausted() && polledState==State.STOPPED) {
+			//Underrun: every queued buffer played out before we got here. The queue is full again, so resume.
+			AL10.alSourcePlay(handle);
+			polledState = State.PLAYING;
+			if (system.metrics!=null) system.metrics.recordUnderrun(handle);
+		}
+	}
+	
+	private void queueStreamBuffer(int bufferHandle) {
+		stream.next(streamBlock, 0, streamFrames);
+		AL10.alBufferData(bufferHandle, streamFormat, streamBlock, streamFrequency);
+		if (system.metrics!=null) system.metrics.recordUpload(streamBlock.length*2L, true);
+		AL10.alSourceQueueBuffers(handle, bufferHandle);
+	}
+	
+	/**
+	 * Closes the stream and detaches its buffers. The source MUST already be stopped.
+	 */
+	private void endStream() {
+		streaming = false;
+		stream.close();
+		stream = null;
+		AL10.alSourcei(handle, AL10.AL_BUFFER, 0); //Unqueues everything
+		if (looping) markDirty(DIRTY_LOOPING); //Streams force looping off in the AL, so put it back
+	}
+	
+	/**
+	 * Gives up this source's claim on its shared Sound buffer. The buffer MUST already be detached.
+	 */
+	private void releaseBuffer() {
+		if (buffer==null) return;
+		system.releaseBuffer(buffer, this);
+		buffer = null;
+	}
+	
+	private void deleteStreamBuffers() {
+		if (streamBuffers==null) return;
+		for(ALAudioBuffer streamBuffer : streamBuffers) streamBuffer.delete();
+		streamBuffers = null;
+	}
+	
 	public void stop() {
 		AL10.alSourceStop(handle);
+		if (streaming) endStream();
 		poll();
 	}
 	
@@ -159,8 +413,24 @@ public class ALAudioSource implements AudioResource {
 	 * Updates this source and fires events.
 	 */
 	public void poll() {
-		State cur = getState();
+		refreshState();
+		update();
+	}
+	
+	/**
+	 * Services streaming and fires events based on the state from the last {@link #refreshState()}.
+	 */
+	void update() {
+		updateStream();
+		
+		State cur = polledState;
 		if (lastState==State.PLAYING && cur==State.STOPPED) {
+			if (streaming) {
+				endStream();
+			} else if (buffer!=null) {
+				AL10.alSourcei(handle, AL10.AL_BUFFER, 0);
+				releaseBuffer();
+			}
 			onStop.fire();
 		}
 		lastState = cur;
@@ -171,14 +441,16 @@ public class ALAudioSource implements AudioResource {
 	}
 	
 	public void delete() {
-		if (buffer!=null) {
-			buffer.delete();
-			buffer = null;
+		if (streaming) {
+			AL10.alSourceStop(handle);
+			endStream();
 		}
-		if (backBuffer!=null) {
-			backBuffer.delete();
-			backBuffer = null;
+		if (buffer!=null) {
+			AL10.alSourceStop(handle);
+			AL10.alSourcei(handle, AL10.AL_BUFFER, 0);
+			releaseBuffer();
 		}
+		deleteStreamBuffers();
 		AL10.alDeleteSources(handle);
 		deleted = true;
 	}
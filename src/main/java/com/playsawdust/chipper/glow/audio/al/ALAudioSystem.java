@@ -9,12 +9,15 @@
 
 package com.playsawdust.chipper.glow.audio.al;
 
+import java.nio.ShortBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
 import org.joml.Vector3d;
+import org.joml.Vector3f;
 import org.lwjgl.openal.AL;
 import org.lwjgl.openal.AL10;
 import org.lwjgl.openal.ALC;
@@ -24,9 +27,14 @@ import org.lwjgl.openal.ALCCapabilities;
 import org.lwjgl.openal.ALCapabilities;
 import org.lwjgl.openal.ALUtil;
 import org.lwjgl.openal.EnumerateAllExt;
+import org.lwjgl.openal.SOFTDeferredUpdates;
+import org.lwjgl.system.MemoryUtil;
 
+import com.playsawdust.chipper.glow.audio.AdpcmSound;
 import com.playsawdust.chipper.glow.audio.AudioException;
 import com.playsawdust.chipper.glow.audio.AudioSystem;
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.audio.metrics.AudioMetrics;
 
 /**
  * AudioSystem is the starting point for getting sounds moving. At a minimum, you need to create an instance of this
@@ -40,6 +48,7 @@ public class ALAudioSystem implements AudioSystem {
 	private ALCapabilities alCaps = null;
 	private long device = 0L;
 	private long context = 0L;
+	private int deviceFrequency = 0;
 	private ALAudioListener listener = new ALAudioListener();
 	
 	private int maxEphemeralSources = 8;
@@ -48,6 +57,25 @@ public class ALAudioSystem implements AudioSystem {
 	
 	private ArrayList<ALAudioSource> persistentSources = new ArrayList<>();
 	
+	private ALBufferResidency residency = new ALBufferResidency();
+	/** Where compressed Sounds are decoded for drivers that can't take them as-is. Grows to the largest such Sound. */
+	private ShortBuffer decodeBuffer = null;
+	
+	private static final Comparator<ALAudioVoice> VOICE_IMPORTANCE = Comparator
+			.comparingInt((ALAudioVoice it)->it.priority).reversed()
+			.thenComparing(Comparator.comparingDouble((ALAudioVoice it)->it.audibility).reversed());
+	private ArrayList<ALAudioSource> dirtySources = new ArrayList<>();
+	
+	private final ALCommandQueue commands = new ALCommandQueue(this);
+	private ALSoundLoader loader = null;
+	private ALEmitterRegistry emitters = null;
+	/** Null while metrics are off, which is what every instrumented spot checks */
+	AudioMetrics metrics = null;
+	
+	private ArrayList<ALAudioVoice> voices = new ArrayList<>();
+	private long lastVoiceUpdate = 0L;
+	private Vector3f listenerPosition = new Vector3f();
+	
 	public ALAudioSystem() {
 		alcCaps = ALC.getCapabilities();
 	}
@@ -86,7 +114,7 @@ public class ALAudioSystem implements AudioSystem {
 		hasInit = true;
 		
 		
-		int deviceFrequency = ALC10.alcGetInteger(device, ALC10.ALC_FREQUENCY);
+		deviceFrequency = ALC10.alcGetInteger(device, ALC10.ALC_FREQUENCY);
 		//System.out.println("Device frequency: "+deviceFrequency);
 		
 		if (alcCaps.OpenALC11) {
@@ -103,6 +131,64 @@ public class ALAudioSystem implements AudioSystem {
 		return listener;
 	}
 	
+	/**
+	 * Gets the command queue for this system, which is the only way to control audio from threads other than the one
+	 * this system was created on.
+	 */
+	public ALCommandQueue getCommandQueue() {
+		return commands;
+	}
+	
+	/**
+	 * Gets the asynchronous loader for this system, starting its decode threads if this is the first call. Sounds it
+	 * loads are decoded in the background and uploaded during {@link #poll()}. The first call MUST be made from the AL
+	 * thread; the loader itself may then be used from any thread.
+	 */
+	public ALSoundLoader getLoader() {
+		if (loader==null) loader = new ALSoundLoader(this, Runtime.getRuntime().availableProcessors());
+		return loader;
+	}
+	
+	/**
+	 * Gets the registry of looping emitters placed in the world, creating it if this is the first call. Each poll starts
+	 * the emitters the listener has come within range of and stops the ones it has left.
+	 */
+	public ALEmitterRegistry getEmitters() {
+		if (emitters==null) emitters = new ALEmitterRegistry(this, ALEmitterRegistry.DEFAULT_CELL_SIZE);
+		return emitters;
+	}
+	
+	/**
+	 * Starts collecting metrics for this system, if it isn't already. Pass the result to
+	 * {@link com.playsawdust.chipper.glow.audio.analog.AudioBus#setMetrics(AudioMetrics)} to time effects as well.
+	 * @return the metrics being collected
+	 */
+	public AudioMetrics enableMetrics() {
+		if (metrics==null) metrics = new AudioMetrics();
+		return metrics;
+	}
+	
+	/**
+	 * Stops collecting metrics. Snapshots already taken are unaffected.
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+	
+	/**
+	 * Gets the metrics being collected for this system, if they're enabled.
+	 */
+	public Optional<AudioMetrics> getMetrics() {
+		return Optional.ofNullable(metrics);
+	}
+	
+	/**
+	 * Gets the frequency the device mixes at. Sounds at this frequency play without being resampled by the AL.
+	 */
+	public int getDeviceFrequency() {
+		return deviceFrequency;
+	}
+	
 	public long getContext() { return context; }
 	public long getDevice() { return device; }
 	
@@ -110,63 +196,336 @@ public class ALAudioSystem implements AudioSystem {
 	 * Creates a new AudioSource. Freeing the returned source is the caller's responsibility.
 	 */
 	public ALAudioSource createSource() {
-		ALAudioSource result = new ALAudioSource();
+		ALAudioSource result = new ALAudioSource(this);
 		persistentSources.add(result);
 		return result;
 	}
 	
 	/**
 	 * Gets an AudioSource from the system pool. These sources are meant for ephemeral or environmental sounds, and no
-	 * methods on them may be called once they transition to the PLAYING State.
+	 * methods on them may be called once they transition to the PLAYING State. If the pool is exhausted, the least
+	 * important voice playing through the pool is made virtual to free up its source.
 	 * @return an AudioSource if one is available, otherwise Optional.empty()
 	 */
 	public Optional<ALAudioSource> getSource() {
-		if (activeEphemeral.size()>=maxEphemeralSources) return Optional.empty(); //TODO: Kill furthest/quietest sounds?
+		ALAudioSource result = takeSource();
+		if (result!=null) return Optional.of(result);
+		
+		//Voices are sorted most- to least-important as of the last poll, so steal from the back
+		for(int i=voices.size()-1; i>=0; i--) {
+			ALAudioVoice voice = voices.get(i);
+			if (voice.isReal()) {
+				ALAudioSource stolen = voice.virtualize();
+				stolen.reset();
+				return Optional.of(stolen);
+			}
+		}
+		
+		if (metrics!=null) metrics.recordSourceRejection();
+		return Optional.empty();
+	}
+	
+	/**
+	 * Moves a source from the inactive pool to the active pool, creating one if needed.
+	 * @return the source, or null if the pool is already at its limit
+	 */
+	private ALAudioSource takeSource() {
+		if (activeEphemeral.size()>=maxEphemeralSources) return null;
 		
+		ALAudioSource result;
 		if (inactiveEphemeral.isEmpty()) {
-			ALAudioSource result = new ALAudioSource();
-			activeEphemeral.add(result);
-			return Optional.of(result);
+			result = new ALAudioSource(this);
 		} else {
-			ALAudioSource result = inactiveEphemeral.pop();
+			result = inactiveEphemeral.pop();
 			result.reset();
+		}
+		
+		result.poolIndex = activeEphemeral.size();
+		activeEphemeral.add(result);
+		return result;
+	}
+	
+	/**
+	 * Moves a source from the active pool to the inactive pool, filling its slot with the last active source.
+	 */
+	private void returnSource(ALAudioSource source) {
+		int index = source.poolIndex;
+		ALAudioSource last = activeEphemeral.remove(activeEphemeral.size()-1);
+		if (last!=source) {
+			activeEphemeral.set(index, last);
+			last.poolIndex = index;
+		}
+		source.poolIndex = -1;
+		inactiveEphemeral.push(source);
+	}
+	
+	/**
+	 * Sets how many pooled sources can play at once, shared between {@link #getSource()} and voices.
+	 */
+	public void setMaxEphemeralSources(int max) {
+		this.maxEphemeralSources = max;
+	}
+	
+	public int getMaxEphemeralSources() {
+		return maxEphemeralSources;
+	}
+	
+	/**
+	 * Starts playing a Sound as a voice. Voices need not have a real source to play; any number of them can be started,
+	 * and the most important ones are given sources from the pool. The returned voice can be moved and adjusted until it
+	 * stops.
+	 */
+	public ALAudioVoice playVoice(Sound sound) {
+		ALAudioVoice result = new ALAudioVoice(sound);
+		voices.add(result);
+		
+		//Start right away if there's room, rather than waiting a poll for arbitration
+		ALAudioSource source = takeSource();
+		if (source!=null) result.realize(source);
+		
+		return result;
+	}
+	
+	/**
+	 * Schedules a source's changed properties to be sent to the AL during the next poll.
+	 */
+	void markDirty(ALAudioSource source) {
+		dirtySources.add(source);
+	}
+	
+	/**
+	 * Sends every changed source and listener property to the AL as one batch. With AL_SOFT_deferred_updates the
+	 * changes all take effect together; otherwise the context is suspended around them, which some implementations use
+	 * the same way.
+	 */
+	private void flushProperties() {
+		if (dirtySources.isEmpty() && !listener.isDirty()) return;
+		
+		boolean deferred = alCaps.AL_SOFT_deferred_updates;
+		if (deferred) {
+			SOFTDeferredUpdates.alDeferUpdatesSOFT();
+		} else {
+			ALC10.alcSuspendContext(context);
+		}
+		
+		listener.flush();
+		for(int i=0; i<dirtySources.size(); i++) {
+			dirtySources.get(i).flush();
+		}
+		dirtySources.clear();
+		
+		if (deferred) {
+			SOFTDeferredUpdates.alProcessUpdatesSOFT();
+		} else {
+			ALC10.alcProcessContext(context);
+		}
+	}
+	
+	/**
+	 * Gives the most important audible voices real sources and makes the rest virtual.
+	 */
+	private void updateVoices() {
+		long now = System.nanoTime();
+		float elapsed = (lastVoiceUpdate==0L) ? 0f : (now-lastVoiceUpdate) / 1_000_000_000f;
+		lastVoiceUpdate = now;
+		
+		listener.getPosition(listenerPosition);
+		for(int i=0; i<voices.size(); i++) {
+			ALAudioVoice voice = voices.get(i);
+			if (!voice.update(elapsed, listenerPosition)) {
+				//Any source it had is stopped, and goes back to the pool with the other stopped sources
+				voices.set(i, voices.get(voices.size()-1));
+				voices.remove(voices.size()-1);
+				i--;
+			}
+		}
+		
+		sortVoices();
+		
+		//Free sources held by voices that lost out before handing any to voices that won, so they can change hands
+		int slots = maxEphemeralSources;
+		for(int i=0; i<voices.size(); i++) {
+			ALAudioVoice voice = voices.get(i);
+			boolean deserved = i<slots && voice.audibility>=ALAudioVoice.AUDIBLE_THRESHOLD;
+			if (voice.isReal() && !deserved) returnSource(voice.virtualize());
+		}
+		for(int i=0; i<voices.size() && i<slots; i++) {
+			ALAudioVoice voice = voices.get(i);
+			if (voice.isReal() || voice.audibility<ALAudioVoice.AUDIBLE_THRESHOLD) continue;
 			
-			activeEphemeral.add(result);
-			return Optional.of(result);
+			ALAudioSource source = takeSource();
+			if (source==null) break;
+			voice.realize(source);
 		}
 	}
 	
+	/**
+	 * Insertion-sorts the voices by importance. Importance changes little from one poll to the next, so the list is
+	 * nearly sorted already and this runs in close to linear time, without the scratch allocations of a merge sort.
+	 */
+	private void sortVoices() {
+		for(int i=1; i<voices.size(); i++) {
+			ALAudioVoice voice = voices.get(i);
+			int j = i-1;
+			while(j>=0 && VOICE_IMPORTANCE.compare(voices.get(j), voice)>0) {
+				voices.set(j+1, voices.get(j));
+				j--;
+			}
+			voices.set(j+1, voice);
+		}
+	}
 	
-	public void poll() {
-		ArrayList<ALAudioSource> goingInactive = new ArrayList<>();
-		for(ALAudioSource source : activeEphemeral) {
-			if (source.getState()==ALAudioSource.State.STOPPED) {
-				goingInactive.add(source);
-			} else {
-				if (source.isStreaming()) {
-					
+	/**
+	 * Gets the shared AL buffer holding this Sound's data, uploading it if it isn't resident, and registers the source
+	 * as one of its users. Every call MUST be balanced by a call to {@link #releaseBuffer(ALAudioBuffer, ALAudioSource)}.
+	 */
+	ALAudioBuffer acquireBuffer(Sound sound, ALAudioSource user) {
+		ALAudioBuffer result = getOrUpload(sound);
+		result.addUser(user);
+		return result;
+	}
+	
+	/**
+	 * Uploads a Sound to the AL ahead of time, and keeps it there even while nothing is playing it, so that the first
+	 * play doesn't pay for the upload. Every call SHOULD eventually be balanced by a call to {@link #unload(Sound)}.
+	 * @see #getLoader()
+	 */
+	public void preload(Sound sound) {
+		getOrUpload(sound).pins++;
+	}
+	
+	/**
+	 * Releases a Sound kept by {@link #preload(Sound)}. Once no source is using it either, its AL buffer becomes
+	 * eligible for eviction.
+	 */
+	public void unload(Sound sound) {
+		ALAudioBuffer buffer = residency.get(sound);
+		if (buffer==null || buffer.pins==0) return;
+		buffer.pins--;
+		if (!buffer.isInUse()) residency.trim();
+	}
+	
+	/**
+	 * Sets how many bytes of Sound data may stay in the AL while nothing is playing it. Idle buffers past this are freed,
+	 * least recently played first, and uploaded again if they're played again. Buffers in use don't count against
+	 * eviction, so the total can run over while they play.
+	 */
+	public void setBufferBudget(long bytes) {
+		residency.setBudget(bytes);
+	}
+	
+	public long getBufferBudget() {
+		return residency.getBudget();
+	}
+	
+	/**
+	 * Gets the total size of every Sound buffer currently in the AL, in bytes.
+	 */
+	public long getResidentBufferBytes() {
+		return residency.getResidentBytes();
+	}
+	
+	/**
+	 * Gets how many Sound buffers have been freed to stay within the budget.
+	 */
+	public long getBufferEvictions() {
+		return residency.getEvictions();
+	}
+	
+	private ALAudioBuffer getOrUpload(Sound sound) {
+		ALAudioBuffer result = residency.get(sound);
+		if (result==null) {
+			result = new ALAudioBuffer();
+			if (sound instanceof AdpcmSound && !result.loadCompressed((AdpcmSound) sound)) {
+				int samples = sound.getSampleCount();
+				if (decodeBuffer==null || decodeBuffer.capacity()<samples) {
+					decodeBuffer = MemoryUtil.memRealloc(decodeBuffer, samples);
 				}
+				result.loadDecoded((AdpcmSound) sound, decodeBuffer);
+			} else {
+				result.loadEntire(sound);
 			}
+			if (metrics!=null) metrics.recordUpload(result.getSize(), false);
+			result.cachedSound = sound;
+			residency.add(sound, result);
 		}
-		for(ALAudioSource source : goingInactive) source.poll();
+		return result;
+	}
+	
+	/**
+	 * Drops a source's claim on a shared buffer. The buffer stays resident until the budget forces it out. The buffer
+	 * MUST already be detached from the source.
+	 */
+	void releaseBuffer(ALAudioBuffer buffer, ALAudioSource user) {
+		buffer.freeUser(user);
+		if (!buffer.isInUse()) residency.trim();
+	}
+	
+	/**
+	 * Updates every source, services streams and voices, fires events, and sends property changes to the AL. Once the
+	 * pools have grown to their working size, this allocates nothing.
+	 */
+	public void poll() {
+		long start = (metrics!=null) ? System.nanoTime() : 0L;
+		
+		commands.drain();
+		if (loader!=null) loader.drainUploads();
+		
+		//Each active source's state is queried exactly once per poll, and everything below reads the cached result
+		for(int i=0; i<activeEphemeral.size(); i++) {
+			activeEphemeral.get(i).refreshState();
+		}
+		
+		if (emitters!=null) {
+			listener.getPosition(listenerPosition);
+			emitters.update(listenerPosition);
+		}
+		
+		updateVoices();
 		
-		activeEphemeral.removeAll(goingInactive);
-		inactiveEphemeral.addAll(goingInactive);
-		goingInactive.clear();
+		for(int i=0; i<activeEphemeral.size(); i++) {
+			ALAudioSource source = activeEphemeral.get(i);
+			source.update();
+			if (source.polledState==ALAudioSource.State.STOPPED) {
+				returnSource(source);
+				i--; //Another source was swapped into this slot
+			}
+		}
 		
-		for(ALAudioSource source : persistentSources) {
+		for(int i=0; i<persistentSources.size(); i++) {
+			ALAudioSource source = persistentSources.get(i);
 			if (source.isDeleted()) {
-				goingInactive.add(source);
+				ALAudioSource last = persistentSources.remove(persistentSources.size()-1);
+				if (last!=source) persistentSources.set(i, last);
+				i--;
 			} else {
 				source.poll();
 			}
 		}
-		persistentSources.removeAll(goingInactive);
+		
+		flushProperties();
+		
+		if (metrics!=null) {
+			metrics.recordPoll(System.nanoTime()-start, activeEphemeral.size(), inactiveEphemeral.size(), persistentSources.size(), voices.size());
+		}
 	}
 	
 	public void delete() {
 		if (!hasInit) return;
 		
+		if (loader!=null) {
+			loader.shutdown();
+			loader = null;
+		}
+		if (emitters!=null) {
+			emitters.clear();
+			emitters = null;
+		}
+		for(ALAudioVoice voice : voices) {
+			voice.source = null;
+			voice.finished = true;
+		}
+		voices.clear();
 		for(ALAudioSource source : activeEphemeral) {
 			source.stop();
 			source.delete();
@@ -177,6 +536,11 @@ public class ALAudioSystem implements AudioSystem {
 			source.delete();
 		}
 		inactiveEphemeral.clear();
+		residency.clear();
+		if (decodeBuffer!=null) {
+			MemoryUtil.memFree(decodeBuffer);
+			decodeBuffer = null;
+		}
 		System.out.println("Cleaning up AL/ALC");
 		
 		ALC10.alcDestroyContext(context);
@@ -200,7 +564,7 @@ public class ALAudioSystem implements AudioSystem {
 		}
 	}
 	
-	private static void checkErrorAL() throws AudioException {
+	static void checkErrorAL() throws AudioException {
 		int error = AL10.alGetError();
 		if (error!=0) {
 			String errorString = AL10.alGetString(error);
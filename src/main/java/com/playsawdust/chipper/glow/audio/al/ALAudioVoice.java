@@ -0,0 +1,223 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+import blue.endless.tinyevents.RunnableEvent;
+
+/**
+ * A logical playing Sound, which may or may not currently be backed by a real AL source. Voices are cheap, and there
+ * can be far more of them than the AL has sources for. Each {@link ALAudioSystem#poll()}, the most important audible
+ * voices are given sources, and the rest go virtual: they keep track of where they would be in their Sound, and pick up
+ * from that spot if they get a source back later.
+ *
+ * <p>Voices are created by {@link ALAudioSystem#playVoice(Sound)}. Once a voice stops, either by reaching the end of a
+ * non-looping Sound or by a call to {@link #stop()}, it is finished and can't be restarted.
+ */
+public class ALAudioVoice {
+	/** Voices quieter than this (-60dB) are never given a real source */
+	public static final float AUDIBLE_THRESHOLD = 0.001f;
+	
+	public static final int PRIORITY_LOW = -100;
+	public static final int PRIORITY_NORMAL = 0;
+	public static final int PRIORITY_HIGH = 100;
+	
+	protected final Sound sound;
+	protected final float duration;
+	protected final Vector3f position = new Vector3f();
+	protected float gain = 1.0f;
+	protected float pitch = 1.0f;
+	protected boolean relative = false;
+	protected boolean looping = false;
+	protected int priority = PRIORITY_NORMAL;
+	
+	/** The real source playing this voice, or null if this voice is virtual */
+	ALAudioSource source = null;
+	/** While virtual, how far into the Sound this voice is, in seconds */
+	float virtualPosition = 0f;
+	/** How loud this voice would be at the listener, as of the last poll */
+	float audibility = 0f;
+	boolean finished = false;
+	
+	public RunnableEvent onStop = RunnableEvent.create();
+	
+	protected ALAudioVoice(Sound sound) {
+		this.sound = sound;
+		int frames = sound.getSampleCount() / sound.getChannelCount();
+		this.duration = frames / (float) sound.getFrequency();
+	}
+	
+	public Sound getSound() {
+		return sound;
+	}
+	
+	public ALAudioVoice setPosition(Vector3fc position) {
+		return setPosition(position.x(), position.y(), position.z());
+	}
+	
+	public ALAudioVoice setPosition(float x, float y, float z) {
+		position.set(x, y, z);
+		if (source!=null) source.setPosition(x, y, z);
+		return this;
+	}
+	
+	public Vector3fc getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Sets the gain of this voice. The default of 1.0f is 100%
+	 */
+	public ALAudioVoice setGain(float gain) {
+		this.gain = gain;
+		if (source!=null) source.setGain(gain);
+		return this;
+	}
+	
+	public float getGain() {
+		return gain;
+	}
+	
+	/**
+	 * Sets the pitch multiplier for this voice. The default is 1.0f
+	 */
+	public ALAudioVoice setPitch(float pitch) {
+		this.pitch = pitch;
+		if (source!=null) source.setPitch(pitch);
+		return this;
+	}
+	
+	public float getPitch() {
+		return pitch;
+	}
+	
+	public ALAudioVoice setRelative(boolean relative) {
+		this.relative = relative;
+		if (source!=null) source.setRelative(relative);
+		return this;
+	}
+	
+	public ALAudioVoice setLooping(boolean looping) {
+		this.looping = looping;
+		if (source!=null) source.setLooping(looping);
+		return this;
+	}
+	
+	/**
+	 * Sets the priority class of this voice. When there aren't enough sources to go around, a voice with higher
+	 * priority always wins over a voice with lower priority; within a priority class, louder voices win.
+	 * @see #PRIORITY_LOW
+	 * @see #PRIORITY_NORMAL
+	 * @see #PRIORITY_HIGH
+	 */
+	public ALAudioVoice setPriority(int priority) {
+		this.priority = priority;
+		return this;
+	}
+	
+	public int getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Returns true if this voice is currently playing through a real AL source.
+	 */
+	public boolean isReal() {
+		return source!=null;
+	}
+	
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	/**
+	 * Gets how far into its Sound this voice is, in seconds.
+	 */
+	public float getPlaybackPosition() {
+		return (source!=null) ? source.getPlaybackPosition() : virtualPosition;
+	}
+	
+	/**
+	 * Stops this voice for good. Its source, if it has one, is returned to the pool on the next poll.
+	 */
+	public void stop() {
+		if (finished) return;
+		if (source!=null) {
+			source.stop();
+			source = null;
+		}
+		finished = true;
+		onStop.fire();
+	}
+	
+	public RunnableEvent onStop() {
+		return onStop;
+	}
+	
+	/**
+	 * Advances this voice by elapsed seconds and recomputes its audibility. Returns false if the voice has finished.
+	 */
+	boolean update(float elapsed, Vector3fc listener) {
+		if (finished) return false;
+		
+		if (source!=null) {
+			if (source.polledState==ALAudioSource.State.STOPPED) {
+				source = null;
+				finished = true;
+				onStop.fire();
+				return false;
+			}
+		} else {
+			virtualPosition += elapsed*pitch;
+			if (virtualPosition>=duration) {
+				if (looping && duration>0) {
+					virtualPosition %= duration;
+				} else {
+					finished = true;
+					onStop.fire();
+					return false;
+				}
+			}
+		}
+		
+		//Approximates the AL's default inverse-clamped distance model with a reference distance of 1
+		float distance = (relative) ? position.length() : position.distance(listener);
+		audibility = gain / Math.max(distance, 1.0f);
+		return true;
+	}
+	
+	/**
+	 * Moves this voice onto a real source, picking up where it left off.
+	 */
+	void realize(ALAudioSource source) {
+		this.source = source;
+		source.setPosition(position);
+		source.setGain(gain);
+		source.setPitch(pitch);
+		source.setRelative(relative);
+		source.setLooping(looping);
+		source.playSound(sound, virtualPosition);
+	}
+	
+	/**
+	 * Takes this voice off its source, remembering where it was. Returns the source, now stopped.
+	 */
+	ALAudioSource virtualize() {
+		ALAudioSource result = source;
+		virtualPosition = result.getPlaybackPosition();
+		result.stop();
+		source = null;
+		return result;
+	}
+}
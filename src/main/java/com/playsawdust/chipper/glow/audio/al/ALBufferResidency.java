@@ -0,0 +1,101 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * Keeps the ALAudioSystem's shared Sound buffers resident against a byte budget. Buffers stay in the AL after their
+ * last source stops, so replaying a Sound costs nothing; once the total size of every resident buffer is over budget,
+ * the least recently played buffers with no users are freed until it's back under. An evicted Sound is simply uploaded
+ * again the next time it plays.
+ *
+ * <p>Buffers being played, or kept by {@link ALAudioSystem#preload(Sound)}, are never evicted, so the budget can be
+ * exceeded while they're held; it's a ceiling on idle memory rather than a hard limit. Streaming buffers belong to their
+ * sources and aren't counted.
+ */
+class ALBufferResidency {
+	/** 128MiB, about 12 minutes of 16-bit stereo 44.1kHz audio */
+	static final long DEFAULT_BUDGET = 128L*1024*1024;
+	
+	/** In least- to most-recently-played order. Sound doesn't override equals, so this is keyed by identity. */
+	private final LinkedHashMap<Sound, ALAudioBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+	private long budget = DEFAULT_BUDGET;
+	private long residentBytes = 0L;
+	private long evictions = 0L;
+	
+	/**
+	 * Gets the resident buffer for a Sound, marking it as just played, or returns null if it isn't resident.
+	 */
+	ALAudioBuffer get(Sound sound) {
+		return buffers.get(sound);
+	}
+	
+	/**
+	 * Starts tracking a freshly uploaded buffer, evicting idle buffers if this pushes the total over budget.
+	 */
+	void add(Sound sound, ALAudioBuffer buffer) {
+		//Trim before adding, since the new buffer has no users yet and mustn't be evicted before its caller claims it
+		residentBytes += buffer.getSize();
+		trim();
+		buffers.put(sound, buffer);
+	}
+	
+	/**
+	 * Frees the least recently played idle buffers until the total is within budget, or nothing idle is left.
+	 */
+	void trim() {
+		if (residentBytes<=budget) return;
+		
+		Iterator<ALAudioBuffer> iterator = buffers.values().iterator();
+		while(residentBytes>budget && iterator.hasNext()) {
+			ALAudioBuffer buffer = iterator.next();
+			//Not checkInUse(): a stopped source that hasn't been polled yet still has the buffer attached in the AL
+			if (buffer.isInUse()) continue;
+			
+			iterator.remove();
+			residentBytes -= buffer.getSize();
+			buffer.cachedSound = null;
+			buffer.delete();
+			evictions++;
+		}
+	}
+	
+	void setBudget(long bytes) {
+		this.budget = bytes;
+		trim();
+	}
+	
+	long getBudget() {
+		return budget;
+	}
+	
+	long getResidentBytes() {
+		return residentBytes;
+	}
+	
+	long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Frees every buffer, in use or not. Only for shutting down.
+	 */
+	void clear() {
+		for(ALAudioBuffer buffer : buffers.values()) {
+			buffer.delete();
+		}
+		buffers.clear();
+		residentBytes = 0L;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * Lets any thread drive an {@link ALAudioSystem} without touching the AL. Calls on this queue, and on the
+ * {@link ALVoiceHandle}s it hands out, only record a command; the thread that owns the AL applies every recorded
+ * command in one batch at the start of each {@link ALAudioSystem#poll()}.
+ *
+ * <p>The queue is a lock-free multi-producer, single-consumer linked queue: producers never block or spin on each
+ * other, each enqueue is a single atomic swap, and commands from any one thread are applied in the order they were
+ * made. This is the ONLY part of the library which is safe to use from threads other than the AL thread.
+ */
+public class ALCommandQueue {
+	private final ALAudioSystem system;
+	/** The most recently enqueued node. Producers swap themselves in here. */
+	private final AtomicReference<Node> tail;
+	/** The last node the consumer applied. Only the AL thread touches this. */
+	private Node head;
+	
+	ALCommandQueue(ALAudioSystem system) {
+		this.system = system;
+		Node stub = new Node(null);
+		this.head = stub;
+		this.tail = new AtomicReference<>(stub);
+	}
+	
+	/**
+	 * Starts playing a Sound as a voice. May be called from any thread.
+	 * @return a handle which can be used from any thread to control the voice
+	 * @see ALAudioSystem#playVoice(Sound)
+	 */
+	public ALVoiceHandle play(Sound sound) {
+		ALVoiceHandle handle = new ALVoiceHandle(this);
+		enqueue(()->handle.attach(system.playVoice(sound)));
+		return handle;
+	}
+	
+	/**
+	 * Runs arbitrary code on the AL thread during the next poll, in order with every other command. This is the way to
+	 * reach sources, the listener, or anything else on the system from another thread. May be called from any thread.
+	 */
+	public void execute(Runnable command) {
+		enqueue(command);
+	}
+	
+	void enqueue(Runnable command) {
+		Node node = new Node(command);
+		Node prev = tail.getAndSet(node);
+		//Between the swap and this write the consumer can't see the new node yet; it will on the next drain
+		prev.next = node;
+	}
+	
+	/**
+	 * Applies every command that's been fully enqueued. MUST only be called from the AL thread.
+	 */
+	void drain() {
+		Node next = head.next;
+		while(next!=null) {
+			head.command = null; //The old head is now garbage; don't let it pin its command
+			head = next;
+			next.command.run();
+			next = head.next;
+		}
+		head.command = null;
+	}
+	
+	private static final class Node {
+		Runnable command;
+		volatile Node next;
+		
+		Node(Runnable command) {
+			this.command = command;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * A looping Sound placed somewhere in the world, such as a waterfall or a humming machine. Emitters cost nothing while
+ * the listener is out of their radius; once it comes within range, the emitter starts a looping
+ * {@link ALAudioVoice voice}, which competes for real sources like any other, and the voice is stopped again when the
+ * listener leaves. Create emitters with {@link ALEmitterRegistry#add(Sound, float, float, float, float)}.
+ */
+public class ALEmitter {
+	protected final ALEmitterRegistry registry;
+	protected final Sound sound;
+	protected final Vector3f position = new Vector3f();
+	protected float radius;
+	protected float gain = 1.0f;
+	protected float pitch = 1.0f;
+	protected int priority = ALAudioVoice.PRIORITY_LOW;
+	
+	/** The voice playing this emitter while the listener is in range */
+	ALAudioVoice voice = null;
+	/** Which registry bucket this emitter is filed under, and where in it, or -1 once removed */
+	int bucket = -1;
+	int slot = -1;
+	/** The registry update that last found this emitter in range */
+	long seen = 0L;
+	boolean inRange = false;
+	
+	ALEmitter(ALEmitterRegistry registry, Sound sound, float x, float y, float z, float radius) {
+		this.registry = registry;
+		this.sound = sound;
+		this.position.set(x, y, z);
+		this.radius = checkRadius(radius);
+	}
+	
+	public Sound getSound() {
+		return sound;
+	}
+	
+	public ALEmitter setPosition(Vector3fc position) {
+		return setPosition(position.x(), position.y(), position.z());
+	}
+	
+	public ALEmitter setPosition(float x, float y, float z) {
+		position.set(x, y, z);
+		if (bucket>=0) registry.move(this);
+		if (voice!=null) voice.setPosition(x, y, z);
+		return this;
+	}
+	
+	public Vector3fc getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Sets how close the listener must be for this emitter to play.
+	 * @throws IllegalArgumentException if the radius is negative, infinite, or NaN
+	 */
+	public ALEmitter setRadius(float radius) {
+		this.radius = checkRadius(radius);
+		if (bucket>=0) registry.radiusChanged(radius);
+		return this;
+	}
+	
+	public float getRadius() {
+		return radius;
+	}
+	
+	public ALEmitter setGain(float gain) {
+		this.gain = gain;
+		if (voice!=null) voice.setGain(gain);
+		return this;
+	}
+	
+	public float getGain() {
+		return gain;
+	}
+	
+	public ALEmitter setPitch(float pitch) {
+		this.pitch = pitch;
+		if (voice!=null) voice.setPitch(pitch);
+		return this;
+	}
+	
+	public float getPitch() {
+		return pitch;
+	}
+	
+	/**
+	 * Sets the priority of this emitter's voice. Emitters default to {@link ALAudioVoice#PRIORITY_LOW}, so that
+	 * ambience gives up its sources to gameplay sounds first.
+	 */
+	public ALEmitter setPriority(int priority) {
+		this.priority = priority;
+		if (voice!=null) voice.setPriority(priority);
+		return this;
+	}
+	
+	public int getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Returns true if the listener was within this emitter's radius as of the last poll.
+	 */
+	public boolean isInRange() {
+		return inRange;
+	}
+	
+	public boolean isRemoved() {
+		return bucket<0;
+	}
+	
+	/**
+	 * Rejects radii the registry can't search. Every cell within an infinite radius can't be visited, and a NaN radius
+	 * would never match.
+	 */
+	private static float checkRadius(float radius) {
+		if (!Float.isFinite(radius) || radius<0) throw new IllegalArgumentException("Emitter radius must be finite and non-negative, not "+radius+".");
+		return radius;
+	}
+	
+	/**
+	 * Starts this emitter's voice, as the listener comes into range.
+	 */
+	void enterRange(ALAudioSystem system) {
+		inRange = true;
+		voice = system.playVoice(sound);
+		voice.setPosition(position).setGain(gain).setPitch(pitch).setPriority(priority).setLooping(true);
+	}
+	
+	/**
+	 * Stops this emitter's voice, as the listener leaves range or the emitter is removed.
+	 */
+	void exitRange() {
+		inRange = false;
+		if (voice!=null) {
+			voice.stop();
+			voice = null;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.joml.Vector3fc;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * Holds every {@link ALEmitter} in the world in a spatially hashed uniform grid, so that each poll only looks at the
+ * emitters near the listener. Space is divided into cubic cells, and each cell is hashed into a fixed table of
+ * buckets; a world of any size costs only as much memory as it has emitters, and each poll costs a lookup for each
+ * cell within reach of the listener plus a distance check for each emitter in those cells, however many emitters are
+ * elsewhere. Cells sharing a bucket just add a few candidates which fail the distance check.
+ *
+ * <p>The cell size SHOULD be around the typical emitter radius. Much smaller, and each poll visits many empty cells;
+ * much larger, and each poll distance-checks many emitters that are out of range.
+ *
+ * <p>Get the registry for a system from {@link ALAudioSystem#getEmitters()}. Like everything else on the system, it
+ * MUST only be used from the AL thread.
+ */
+public class ALEmitterRegistry {
+	public static final float DEFAULT_CELL_SIZE = 32f;
+	private static final int INITIAL_BUCKETS = 1024;
+	/** The table doubles whenever it averages more emitters than this per bucket */
+	private static final int MAX_LOAD = 4;
+	
+	private final ALAudioSystem system;
+	private final float cellSize;
+	private final float inverseCellSize;
+	private ALEmitter[][] buckets = new ALEmitter[INITIAL_BUCKETS][];
+	private int[] bucketSizes = new int[INITIAL_BUCKETS];
+	private int mask = INITIAL_BUCKETS-1;
+	private int count = 0;
+	/** The largest radius any emitter has had. It never shrinks, which only costs a few extra cells per poll. */
+	private float maxRadius = 0f;
+	
+	private final ArrayList<ALEmitter> inRange = new ArrayList<>();
+	private long updateCount = 0L;
+	
+	ALEmitterRegistry(ALAudioSystem system, float cellSize) {
+		if (!(cellSize>0)) throw new IllegalArgumentException("Cell size must be positive.");
+		this.system = system;
+		this.cellSize = cellSize;
+		this.inverseCellSize = 1f / cellSize;
+	}
+	
+	/**
+	 * Places a new emitter in the world. It starts playing on the next poll if the listener is within its radius.
+	 * @throws IllegalArgumentException if the radius is negative, infinite, or NaN
+	 */
+	public ALEmitter add(Sound sound, float x, float y, float z, float radius) {
+		ALEmitter result = new ALEmitter(this, sound, x, y, z, radius);
+		insert(result, bucketOf(x, y, z));
+		count++;
+		radiusChanged(radius);
+		if (count > buckets.length*MAX_LOAD) rehash(buckets.length*2);
+		return result;
+	}
+	
+	public ALEmitter add(Sound sound, Vector3fc position, float radius) {
+		return add(sound, position.x(), position.y(), position.z(), radius);
+	}
+	
+	/**
+	 * Takes an emitter out of the world, stopping it if it's playing. Removing an emitter twice has no further effect.
+	 */
+	public void remove(ALEmitter emitter) {
+		if (emitter.registry!=this || emitter.bucket<0) return;
+		if (emitter.inRange) {
+			emitter.exitRange();
+			inRange.remove(emitter);
+		}
+		detach(emitter);
+		count--;
+	}
+	
+	/**
+	 * Gets the number of emitters in the world.
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Gets how many emitters had the listener within their radius as of the last poll.
+	 */
+	public int getInRangeCount() {
+		return inRange.size();
+	}
+	
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	/**
+	 * Starts the emitters the listener has come within range of, and stops the ones it has left. Called from
+	 * {@link ALAudioSystem#poll()}.
+	 */
+	void update(Vector3fc listener) {
+		long stamp = ++updateCount;
+		float reach = maxRadius;
+		float lx = listener.x();
+		float ly = listener.y();
+		float lz = listener.z();
+		
+		int minX = cell(lx-reach);
+		int minY = cell(ly-reach);
+		int minZ = cell(lz-reach);
+		//Spans are counted in longs, since cells saturate at the int range for far-off listeners or huge radii
+		long spanX = (long) cell(lx+reach) - minX + 1;
+		long spanY = (long) cell(ly+reach) - minY + 1;
+		long spanZ = (long) cell(lz+reach) - minZ + 1;
+		int bucketCount = buckets.length;
+		long cells = bucketCount;
+		if (spanX<bucketCount && spanY<bucketCount && spanZ<bucketCount) {
+			cells = spanX*spanY;
+			if (cells<bucketCount) cells *= spanZ;
+		}
+		
+		if (cells>=bucketCount) {
+			//The listener can reach more cells than there are buckets, so every bucket would be visited anyway
+			for(int b=0; b<bucketCount; b++) visit(b, lx, ly, lz, stamp);
+		} else {
+			//Counted loops, so a span ending at Integer.MAX_VALUE still terminates
+			for(int i=0; i<spanX; i++) {
+				for(int j=0; j<spanY; j++) {
+					for(int k=0; k<spanZ; k++) {
+						visit(hash(minX+i, minY+j, minZ+k) & mask, lx, ly, lz, stamp);
+					}
+				}
+			}
+		}
+		
+		//Anything that was in range but wasn't seen this time has been left behind
+		for(int i=0; i<inRange.size(); i++) {
+			ALEmitter emitter = inRange.get(i);
+			if (emitter.seen==stamp) continue;
+			emitter.exitRange();
+			inRange.set(i, inRange.get(inRange.size()-1));
+			inRange.remove(inRange.size()-1);
+			i--;
+		}
+	}
+	
+	/**
+	 * Stops every emitter and forgets them all. Used when the system shuts down.
+	 */
+	void clear() {
+		for(ALEmitter emitter : inRange) emitter.exitRange();
+		inRange.clear();
+		for(int b=0; b<buckets.length; b++) {
+			for(int i=0; i<bucketSizes[b]; i++) buckets[b][i].bucket = -1;
+			buckets[b] = null;
+			bucketSizes[b] = 0;
+		}
+		count = 0;
+	}
+	
+	/**
+	 * Refiles an emitter whose position changed, if it has moved into a cell in a different bucket.
+	 */
+	void move(ALEmitter emitter) {
+		Vector3fc pos = emitter.position;
+		int bucket = bucketOf(pos.x(), pos.y(), pos.z());
+		if (bucket==emitter.bucket) return;
+		detach(emitter);
+		insert(emitter, bucket);
+	}
+	
+	void radiusChanged(float radius) {
+		if (radius>maxRadius) maxRadius = radius;
+	}
+	
+	private void visit(int bucket, float lx, float ly, float lz, long stamp) {
+		ALEmitter[] emitters = buckets[bucket];
+		int size = bucketSizes[bucket];
+		for(int i=0; i<size; i++) {
+			ALEmitter emitter = emitters[i];
+			if (emitter.seen==stamp) continue; //Already reached through another cell sharing this bucket
+			
+			float dx = emitter.position.x - lx;
+			float dy = emitter.position.y - ly;
+			float dz = emitter.position.z - lz;
+			float r = emitter.radius;
+			if (dx*dx + dy*dy + dz*dz > r*r) continue;
+			
+			emitter.seen = stamp;
+			if (!emitter.inRange) {
+				emitter.enterRange(system);
+				inRange.add(emitter);
+			}
+		}
+	}
+	
+	private void insert(ALEmitter emitter, int bucket) {
+		ALEmitter[] emitters = buckets[bucket];
+		int size = bucketSizes[bucket];
+		if (emitters==null) {
+			emitters = new ALEmitter[4];
+			buckets[bucket] = emitters;
+		} else if (size==emitters.length) {
+			emitters = Arrays.copyOf(emitters, size*2);
+			buckets[bucket] = emitters;
+		}
+		emitters[size] = emitter;
+		bucketSizes[bucket] = size+1;
+		emitter.bucket = bucket;
+		emitter.slot = size;
+	}
+	
+	/**
+	 * Takes an emitter out of its bucket by moving the bucket's last emitter into its slot.
+	 */
+	private void detach(ALEmitter emitter) {
+		int bucket = emitter.bucket;
+		ALEmitter[] emitters = buckets[bucket];
+		int last = bucketSizes[bucket]-1;
+		ALEmitter moved = emitters[last];
+		emitters[emitter.slot] = moved;
+		moved.slot = emitter.slot;
+		emitters[last] = null;
+		bucketSizes[bucket] = last;
+		emitter.bucket = -1;
+		emitter.slot = -1;
+	}
+	
+	private void rehash(int newSize) {
+		ALEmitter[][] oldBuckets = buckets;
+		int[] oldSizes = bucketSizes;
+		buckets = new ALEmitter[newSize][];
+		bucketSizes = new int[newSize];
+		mask = newSize-1;
+		for(int b=0; b<oldBuckets.length; b++) {
+			for(int i=0; i<oldSizes[b]; i++) {
+				ALEmitter emitter = oldBuckets[b][i];
+				Vector3fc pos = emitter.position;
+				insert(emitter, bucketOf(pos.x(), pos.y(), pos.z()));
+			}
+		}
+	}
+	
+	private int bucketOf(float x, float y, float z) {
+		return hash(cell(x), cell(y), cell(z)) & mask;
+	}
+	
+	private int cell(float coordinate) {
+		return (int) Math.floor(coordinate * inverseCellSize);
+	}
+	
+	private static int hash(int cx, int cy, int cz) {
+		int h = cx*0x8DA6B343 ^ cy*0xD8163841 ^ cz*0xCB1AB31F;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.audio.io.VorbisInput;
+import com.playsawdust.chipper.glow.audio.io.WavInput;
+
+/**
+ * Loads Sounds in the background. Files are parsed and decoded on a fixed pool of daemon threads, one per core by
+ * default, and each decoded Sound is queued for upload; {@link ALAudioSystem#poll()} then uploads queued Sounds on the
+ * AL thread, a limited number of bytes per poll so that a big batch doesn't stall one frame.
+ *
+ * <pre>
+ * List&lt;CompletableFuture&lt;Sound&gt;&gt; loads = paths.stream().map(loader::load).collect(Collectors.toList());
+ * CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).thenRun(this::startLevel);
+ * </pre>
+ *
+ * <p>A returned future completes once its Sound is uploaded and preloaded, as if by
+ * {@link ALAudioSystem#preload(Sound)}, so the first play costs nothing extra. Call {@link ALAudioSystem#unload(Sound)}
+ * when it's no longer needed. Futures complete on the AL thread, so stages chained on without an executor may safely
+ * play the Sound. Every method on this class may be called from any thread.
+ */
+public class ALSoundLoader {
+	/** About 12 seconds of 16-bit stereo 44.1kHz audio per poll, which most drivers copy in a millisecond or two */
+	public static final long DEFAULT_UPLOAD_BYTES_PER_POLL = 2L*1024*1024;
+	
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+	
+	private final ALAudioSystem system;
+	private final ExecutorService decoders;
+	private final ConcurrentLinkedQueue<Upload> uploads = new ConcurrentLinkedQueue<>();
+	private volatile long uploadBytesPerPoll = DEFAULT_UPLOAD_BYTES_PER_POLL;
+	private volatile boolean isShutdown = false;
+	
+	ALSoundLoader(ALAudioSystem system, int threads) {
+		this.system = system;
+		
+		int pool = POOL_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.decoders = Executors.newFixedThreadPool(threads, (it)->{
+			Thread thread = new Thread(it, "glow-audio-loader-"+pool+"-"+threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Loads a WAV or Ogg Vorbis file, chosen by its extension.
+	 * @return a future which completes with the Sound once it's uploaded, or exceptionally if it can't be read
+	 */
+	public CompletableFuture<Sound> load(Path path) {
+		return load(()->read(path));
+	}
+	
+	/**
+	 * Runs any decoder on the loader's threads, and uploads its result.
+	 * @return a future which completes with the Sound once it's uploaded, or exceptionally if the decoder throws
+	 */
+	public CompletableFuture<Sound> load(Callable<? extends Sound> decoder) {
+		CompletableFuture<Sound> result = new CompletableFuture<>();
+		if (isShutdown) {
+			result.cancel(false);
+			return result;
+		}
+		
+		try {
+			decoders.execute(new Decode(decoder, result));
+		} catch (RejectedExecutionException ex) {
+			result.cancel(false); //Shut down since the check above
+		}
+		return result;
+	}
+	
+	/**
+	 * Sets roughly how many bytes of sample data are uploaded per poll. At least one Sound is always uploaded if any are
+	 * waiting, however large it is.
+	 */
+	public void setUploadBytesPerPoll(long bytes) {
+		this.uploadBytesPerPoll = bytes;
+	}
+	
+	public long getUploadBytesPerPoll() {
+		return uploadBytesPerPoll;
+	}
+	
+	/**
+	 * Gets how many decoded Sounds are waiting to be uploaded.
+	 */
+	public int getPendingUploads() {
+		return uploads.size();
+	}
+	
+	/**
+	 * Uploads queued Sounds until this poll's byte budget is spent. MUST only be called from the AL thread.
+	 */
+	void drainUploads() {
+		long budget = uploadBytesPerPoll;
+		long uploaded = 0L;
+		while(uploaded<budget) {
+			Upload next = uploads.poll();
+			if (next==null) break;
+			if (next.future.isDone()) continue; //Cancelled by the caller
+			
+			try {
+				system.preload(next.sound);
+			} catch (RuntimeException ex) {
+				next.future.completeExceptionally(ex);
+				continue;
+			}
+			uploaded += next.sound.getSampleCount() * 2L;
+			next.future.complete(next.sound);
+		}
+	}
+	
+	/**
+	 * Stops the decode threads, and cancels every load that hasn't finished.
+	 */
+	void shutdown() {
+		isShutdown = true;
+		for(Runnable waiting : decoders.shutdownNow()) {
+			((Decode) waiting).future.cancel(false);
+		}
+		cancelUploads();
+	}
+	
+	private void cancelUploads() {
+		Upload next;
+		while((next = uploads.poll())!=null) {
+			next.future.cancel(false);
+		}
+	}
+	
+	private static Sound read(Path path) throws IOException {
+		String name = path.getFileName().toString().toLowerCase();
+		if (name.endsWith(".ogg") || name.endsWith(".oga")) return VorbisInput.read(path);
+		
+		try(InputStream in = Files.newInputStream(path)) {
+			return WavInput.read(in);
+		}
+	}
+	
+	private final class Decode implements Runnable {
+		final Callable<? extends Sound> decoder;
+		final CompletableFuture<Sound> future;
+		
+		Decode(Callable<? extends Sound> decoder, CompletableFuture<Sound> future) {
+			this.decoder = decoder;
+			this.future = future;
+		}
+		
+		@Override
+		public void run() {
+			if (future.isDone()) return; //Cancelled while it waited
+			try {
+				uploads.add(new Upload(decoder.call(), future));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+			if (isShutdown) cancelUploads(); //Raced with shutdown, and nothing will drain the queue now
+		}
+	}
+	
+	private static final class Upload {
+		final Sound sound;
+		final CompletableFuture<Sound> future;
+		
+		Upload(Sound sound, CompletableFuture<Sound> future) {
+			this.sound = sound;
+			this.future = future;
+		}
+	}
+}
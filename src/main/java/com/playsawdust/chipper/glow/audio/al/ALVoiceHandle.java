@@ -0,0 +1,78 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import org.joml.Vector3fc;
+
+/**
+ * A thread-safe stand-in for an {@link ALAudioVoice}. Every method may be called from any thread; changes are queued
+ * and reach the voice during the next {@link ALAudioSystem#poll()}. Get one from {@link ALCommandQueue#play}.
+ */
+public class ALVoiceHandle {
+	private final ALCommandQueue queue;
+	/** The voice this handle controls. Only the AL thread touches this. */
+	private ALAudioVoice voice = null;
+	private volatile boolean finished = false;
+	
+	ALVoiceHandle(ALCommandQueue queue) {
+		this.queue = queue;
+	}
+	
+	void attach(ALAudioVoice voice) {
+		this.voice = voice;
+		voice.onStop().register(()->finished = true);
+	}
+	
+	public ALVoiceHandle setPosition(Vector3fc position) {
+		return setPosition(position.x(), position.y(), position.z());
+	}
+	
+	public ALVoiceHandle setPosition(float x, float y, float z) {
+		queue.enqueue(()->voice.setPosition(x, y, z));
+		return this;
+	}
+	
+	public ALVoiceHandle setGain(float gain) {
+		queue.enqueue(()->voice.setGain(gain));
+		return this;
+	}
+	
+	public ALVoiceHandle setPitch(float pitch) {
+		queue.enqueue(()->voice.setPitch(pitch));
+		return this;
+	}
+	
+	public ALVoiceHandle setRelative(boolean relative) {
+		queue.enqueue(()->voice.setRelative(relative));
+		return this;
+	}
+	
+	public ALVoiceHandle setLooping(boolean looping) {
+		queue.enqueue(()->voice.setLooping(looping));
+		return this;
+	}
+	
+	public ALVoiceHandle setPriority(int priority) {
+		queue.enqueue(()->voice.setPriority(priority));
+		return this;
+	}
+	
+	public void stop() {
+		queue.enqueue(()->voice.stop());
+	}
+	
+	/**
+	 * Returns true once the AL thread has seen this voice stop. Since commands are applied asynchronously, this may
+	 * lag behind a call to {@link #stop()} by up to one poll.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -9,10 +9,12 @@
 
 package com.playsawdust.chipper.glow.audio.analog;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import com.playsawdust.chipper.glow.audio.SampleIterator;
+import com.playsawdust.chipper.glow.audio.metrics.AudioMetrics;
 
 /**
  * Represents a linear arrangement of AudioEffects. Effects can be added, removed, and rearranged, and sources attached
@@ -20,16 +22,38 @@ import com.playsawdust.chipper.glow.audio.SampleIterator;
  */
 public class AudioBus implements SampleIterator {
 	protected SampleIterator source;
-	protected List<AudioEffect> chain;
+	protected List<AudioEffect> chain = new ArrayList<>();
 	protected boolean isOpen = false;
 	protected short[] dry;
 	protected short[] wet;
 	protected int frequency = 0;
 	protected int numChannels = 0;
+	protected AudioMetrics metrics = null;
 	
 	protected double dryGain = 1.0f;
 	protected double wetGain = 1.0f;
 	
+	/**
+	 * Sets the SampleIterator which feeds the first effect in this Bus. Can only be done while the Bus is closed.
+	 * @param source the source to set, or null to feed the bus silence
+	 */
+	public void setSource(SampleIterator source) {
+		assertClosed();
+		this.source = source;
+		stitch();
+	}
+	
+	/**
+	 * Sets where the effects on this Bus report their processing time, including effects added later. Each effect's
+	 * own time is recorded, not counting the effects before it in the chain.
+	 * @param metrics the metrics to record into, such as the result of
+	 *                {@link com.playsawdust.chipper.glow.audio.al.ALAudioSystem#enableMetrics()}, or null to stop
+	 */
+	public void setMetrics(AudioMetrics metrics) {
+		this.metrics = metrics;
+		for(AudioEffect effect : chain) effect.setMetrics(metrics);
+	}
+	
 	/**
 	 * Appends an AudioEffect to the end of this Bus. Can only be done while the Bus is closed.
 	 * @param effect The AudioEffect to add
@@ -74,26 +98,37 @@ public class AudioBus implements SampleIterator {
 
 	@Override
 	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
 		assertOpen();
 		
-		//Get dry data
-		short[] dry = new short[numChannels];
-		if (source!=null) {
-			source.next(dry);
-		} else {
-			Arrays.fill(dry, (short) 0);
-		}
-		
 		if (!chain.isEmpty()) {
-			chain.get(chain.size()-1).next(buffer);
+			chain.get(chain.size()-1).next(buffer, offset, frames);
 		} else {
 			if (source!=null) {
-				source.next(buffer);
+				source.next(buffer, offset, frames);
 			} else {
-				Arrays.fill(buffer, (short) 0);
+				Arrays.fill(buffer, offset, offset + frames*numChannels, (short) 0);
 			}
 		}
 	}
+	
+	@Override
+	public boolean isExhausted() {
+		if (!chain.isEmpty()) {
+			return chain.get(chain.size()-1).isExhausted();
+		} else {
+			return source!=null && source.isExhausted();
+		}
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? numChannels : 0;
+	}
 
 	/**
 	 * Closes this AudioBus, all effects, and the source AudioSource that feeds it.
@@ -111,14 +146,14 @@ public class AudioBus implements SampleIterator {
 	
 	protected void stitch() {
 		if (!chain.isEmpty()) {
-			if (source!=null) {
-				//chain.get(0).setSource(source);
-				
-				if (chain.size()>1) {
-					for(int i=0; i<chain.size(); i++) {
-						chain.get(i).setSource(chain.get(i-1));
-					}
-				}
+			chain.get(0).setSource(source);
+			
+			for(int i=1; i<chain.size(); i++) {
+				chain.get(i).setSource(chain.get(i-1));
+			}
+			
+			if (metrics!=null) {
+				for(AudioEffect effect : chain) effect.setMetrics(metrics);
 			}
 		}
 	}
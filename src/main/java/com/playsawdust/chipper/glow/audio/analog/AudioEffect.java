@@ -14,6 +14,7 @@ import java.util.Arrays;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import com.playsawdust.chipper.glow.audio.SampleIterator;
+import com.playsawdust.chipper.glow.audio.metrics.AudioMetrics;
 
 /**
  * Represents both a consumer and producer for audio data.
@@ -22,8 +23,11 @@ public abstract class AudioEffect implements SampleIterator {
 	protected int frequency;
 	protected int channels;
 	protected short[] sourceBuffer;
+	private short[] srcFrame;
+	private short[] destFrame;
 	protected @Nullable SampleIterator source;
 	protected boolean isOpen = false;
+	protected @Nullable AudioMetrics metrics;
 	
 	/**
 	 * Sets the source of this effect. If source is set to null, this effect will behave as if a source is present and
@@ -35,6 +39,15 @@ public abstract class AudioEffect implements SampleIterator {
 		this.source = src;
 	}
 	
+	/**
+	 * Sets where this effect reports how long it spends processing each block. An AudioBus sets this on every effect
+	 * in its chain.
+	 * @param metrics the metrics to record into, or null to stop recording
+	 */
+	public void setMetrics(@Nullable AudioMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
 	@Override
 	public void open(int frequency, int channels) {
 		assertClosed();
@@ -42,20 +55,52 @@ public abstract class AudioEffect implements SampleIterator {
 		this.frequency = frequency;
 		this.channels = channels;
 		this.sourceBuffer = new short[channels];
+		this.srcFrame = new short[channels];
+		this.destFrame = new short[channels];
 		if (source!=null) source.open(frequency, channels);
+		isOpen = true;
 	}
 	
 	@Override
 	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
 		assertOpen();
 		
+		int samples = frames*channels;
+		if (sourceBuffer.length<samples) sourceBuffer = new short[samples];
+		
 		if (source==null) {
-			Arrays.fill(sourceBuffer, (short) 0);
- 		} else {
- 			source.next(sourceBuffer);
- 		}
+			Arrays.fill(sourceBuffer, 0, samples, (short) 0);
+		} else {
+			source.next(sourceBuffer, 0, frames);
+		}
 		
-		apply(sourceBuffer, buffer);
+		AudioMetrics metrics = this.metrics;
+		if (metrics==null) {
+			apply(sourceBuffer, 0, buffer, offset, frames);
+		} else {
+			long start = System.nanoTime();
+			apply(sourceBuffer, 0, buffer, offset, frames);
+			metrics.recordEffect(this, frames, System.nanoTime()-start);
+		}
+	}
+	
+	/**
+	 * An effect is exhausted when its source is. Effects which keep ringing after their input ends (delays, reverbs)
+	 * SHOULD override this to account for their tail.
+	 */
+	@Override
+	public boolean isExhausted() {
+		return source!=null && source.isExhausted();
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? channels : 0;
 	}
 	
 	/**
@@ -66,10 +111,29 @@ public abstract class AudioEffect implements SampleIterator {
 	 */
 	public abstract void apply(short[] src, short[] dest);
 	
+	/**
+	 * Applies this effect to a block of interleaved sample frames in src, writing the result into dest. Effects SHOULD
+	 * override this to process the whole block in one pass; the default implementation calls
+	 * {@link #apply(short[], short[])} once per frame.
+	 * @param src        a buffer containing interleaved source frames
+	 * @param srcOffset  the index of the first source sample
+	 * @param dest       a buffer to hold output data
+	 * @param destOffset the index where the first output sample will be written
+	 * @param frames     the number of sample frames to process
+	 */
+	public void apply(short[] src, int srcOffset, short[] dest, int destOffset, int frames) {
+		for(int i=0; i<frames; i++) {
+			System.arraycopy(src, srcOffset + i*channels, srcFrame, 0, channels);
+			apply(srcFrame, destFrame);
+			System.arraycopy(destFrame, 0, dest, destOffset + i*channels, channels);
+		}
+	}
+	
 	@Override
 	public void close() {
 		if (!isOpen) return; //Double-close is a valid no-op
 		if (source!=null) source.close();
+		isOpen = false;
 	}
 	
 	protected void assertOpen() {
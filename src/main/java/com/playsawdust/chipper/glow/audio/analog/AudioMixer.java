@@ -0,0 +1,310 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.analog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+
+/**
+ * Sums any number of SampleIterators into one signal, applying gain and pan to each. Because the mixer is itself a
+ * SampleIterator, the whole mix can be played through a single streaming AL source:
+ *
+ * <pre>
+ * AudioMixer mixer = new AudioMixer();
+ * mixer.add(music).setGain(0.5f);
+ * mixer.add(footsteps).setPan(-0.3f);
+ * source.playStream(mixer, 48000, 2);
+ * </pre>
+ *
+ * <p>Unlike an AudioBus, inputs can be added and removed while the mixer is open; an input added to an open mixer is
+ * opened right away with the mixer's format. Inputs are mixed into a floating-point accumulator and only clamped to
+ * 16 bits once, at the end, so loud moments between inputs that cancel out don't clip. Exhausted inputs are closed
+ * and dropped automatically. The mixer itself never becomes exhausted.
+ */
+public class AudioMixer implements SampleIterator {
+	protected ArrayList<Input> inputs = new ArrayList<>();
+	protected boolean isOpen = false;
+	protected int frequency = 0;
+	protected int numChannels = 0;
+	protected float masterGain = 1.0f;
+	
+	protected float[] accumulator = new float[0];
+	protected short[] scratch = new short[0];
+	protected float[] channelGains = new float[0];
+	protected ForkJoinPool pool = null;
+	/** The parallel render tasks, built for renderTasksSize inputs and reused for every block while that stays put */
+	private RenderTask renderTasks = null;
+	private int renderTasksSize = 0;
+	private int blockFrames = 0;
+	private int blockSamples = 0;
+	
+	/**
+	 * Adds an input to this mixer at full gain and center pan. If the mixer is open, the source is opened immediately.
+	 * @param source a closed SampleIterator
+	 * @return the new input, which can be used to adjust gain and pan, or remove the source
+	 */
+	public Input add(SampleIterator source) {
+		Input result = new Input(this, source);
+		inputs.add(result);
+		if (isOpen) source.open(frequency, numChannels);
+		return result;
+	}
+	
+	/**
+	 * Removes an input from this mixer, closing its source if the mixer is open.
+	 */
+	public void remove(Input input) {
+		if (inputs.remove(input) && isOpen) input.source.close();
+	}
+	
+	public int getInputCount() {
+		return inputs.size();
+	}
+	
+	/**
+	 * Sets the gain applied to the final mix, before it's clamped. The default of 1.0f is 100%
+	 */
+	public void setMasterGain(float gain) {
+		this.masterGain = gain;
+	}
+	
+	public float getMasterGain() {
+		return masterGain;
+	}
+	
+	/**
+	 * Sets a pool to render inputs on. When set, each block's inputs are pulled concurrently, then summed in order on
+	 * the calling thread, so the output is identical to the serial mix. This is worth doing when inputs are expensive,
+	 * such as sub-buses with long effect chains or nested mixers. Every input MUST then be independent of every other:
+	 * no input may share a source, effect, or other mutable state with another.
+	 *
+	 * <p>The tree of render tasks is built once for each input count and reused from block to block, so the mixer
+	 * itself allocates nothing per block in steady state. The pool may still allocate internally, for example when the
+	 * calling thread has to wait for a task that another worker has taken.
+	 * @param pool the pool to render on, such as {@link ForkJoinPool#commonPool()}, or null to render serially
+	 */
+	public void setParallelism(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("AudioMixer must be closed for this operation.");
+		this.frequency = frequency;
+		this.numChannels = channels;
+		this.channelGains = new float[channels];
+		for(Input input : inputs) input.source.open(frequency, channels);
+		isOpen = true;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("AudioMixer must be open for this operation.");
+		
+		int samples = frames*numChannels;
+		if (accumulator.length<samples) {
+			accumulator = new float[samples];
+			scratch = new short[samples];
+		}
+		Arrays.fill(accumulator, 0, samples, 0f);
+		
+		if (pool!=null && inputs.size()>1) {
+			if (renderTasks==null || renderTasksSize!=inputs.size()) {
+				renderTasks = new RenderTask(this, 0, inputs.size());
+				renderTasksSize = inputs.size();
+			}
+			blockFrames = frames;
+			blockSamples = samples;
+			renderTasks.reinitialize();
+			pool.invoke(renderTasks);
+			for(int i=0; i<inputs.size(); i++) accumulate(inputs.get(i), inputs.get(i).block, frames);
+		} else {
+			for(int i=0; i<inputs.size(); i++) {
+				Input input = inputs.get(i);
+				input.source.next(scratch, 0, frames);
+				accumulate(input, scratch, frames);
+			}
+		}
+		
+		for(int i=0; i<inputs.size(); i++) {
+			Input input = inputs.get(i);
+			if (input.source.isExhausted()) {
+				input.source.close();
+				inputs.set(i, inputs.get(inputs.size()-1));
+				inputs.remove(inputs.size()-1);
+				i--;
+			}
+		}
+		
+		float gain = masterGain;
+		for(int i=0; i<samples; i++) {
+			float sample = accumulator[i] * gain;
+			//Saturate instead of wrapping around
+			if (sample>Short.MAX_VALUE) sample = Short.MAX_VALUE;
+			if (sample<Short.MIN_VALUE) sample = Short.MIN_VALUE;
+			buffer[offset+i] = (short) sample;
+		}
+	}
+	
+	/**
+	 * Adds frames of the input's samples, from src, into the accumulator.
+	 */
+	protected void accumulate(Input input, short[] src, int frames) {
+		float[] acc = accumulator;
+		
+		if (numChannels==1) {
+			float gain = input.gain;
+			for(int i=0; i<frames; i++) acc[i] += src[i] * gain;
+			return;
+		}
+		
+		//Constant-power pan across the first two channels, scaled so center is unity; other channels get just the gain
+		double angle = (input.pan + 1.0) * (Math.PI / 4.0);
+		float left = (float) (Math.cos(angle) * Math.sqrt(2)) * input.gain;
+		float right = (float) (Math.sin(angle) * Math.sqrt(2)) * input.gain;
+		
+		if (numChannels==2) {
+			for(int i=0; i<frames*2; i+=2) {
+				acc[i] += src[i] * left;
+				acc[i+1] += src[i+1] * right;
+			}
+			return;
+		}
+		
+		float[] gains = channelGains;
+		Arrays.fill(gains, input.gain);
+		gains[0] = left;
+		gains[1] = right;
+		for(int i=0; i<frames; i++) {
+			int base = i*numChannels;
+			for(int j=0; j<numChannels; j++) {
+				acc[base+j] += src[base+j] * gains[j];
+			}
+		}
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? numChannels : 0;
+	}
+	
+	/**
+	 * Closes this mixer and all of its inputs. The inputs stay attached, and are reopened if the mixer is.
+	 */
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		for(Input input : inputs) input.source.close();
+		isOpen = false;
+	}
+	
+	/**
+	 * Pulls one block from each of a range of inputs into their own buffers, splitting the range across the pool. The
+	 * whole tree is built up front, and each node resets its children before forking them again.
+	 */
+	private static class RenderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final AudioMixer mixer;
+		private final int start;
+		private final RenderTask left;
+		private final RenderTask right;
+		
+		RenderTask(AudioMixer mixer, int start, int end) {
+			this.mixer = mixer;
+			this.start = start;
+			if (end-start>1) {
+				int mid = (start+end) >>> 1;
+				left = new RenderTask(mixer, start, mid);
+				right = new RenderTask(mixer, mid, end);
+			} else {
+				left = null;
+				right = null;
+			}
+		}
+		
+		@Override
+		protected void compute() {
+			if (left!=null) {
+				left.reinitialize();
+				right.reinitialize();
+				invokeAll(left, right);
+				return;
+			}
+			
+			Input input = mixer.inputs.get(start);
+			int samples = mixer.blockSamples;
+			if (input.block.length<samples) input.block = new short[samples];
+			input.source.next(input.block, 0, mixer.blockFrames);
+		}
+	}
+	
+	/**
+	 * One source feeding an AudioMixer, with its own gain and pan.
+	 */
+	public static class Input {
+		protected final AudioMixer mixer;
+		protected final SampleIterator source;
+		protected float gain = 1.0f;
+		protected float pan = 0.0f;
+		/** Where this input renders to when the mixer renders in parallel */
+		protected short[] block = new short[0];
+		
+		protected Input(AudioMixer mixer, SampleIterator source) {
+			this.mixer = mixer;
+			this.source = source;
+		}
+		
+		public SampleIterator getSource() {
+			return source;
+		}
+		
+		/**
+		 * Sets the gain of this input. The default of 1.0f is 100%
+		 */
+		public Input setGain(float gain) {
+			this.gain = gain;
+			return this;
+		}
+		
+		public float getGain() {
+			return gain;
+		}
+		
+		/**
+		 * Sets the stereo position of this input, from -1.0f (hard left) through 0.0f (center, the default) to 1.0f
+		 * (hard right). Has no effect on a mono mix.
+		 */
+		public Input setPan(float pan) {
+			this.pan = Math.max(-1.0f, Math.min(1.0f, pan));
+			return this;
+		}
+		
+		public float getPan() {
+			return pan;
+		}
+		
+		/**
+		 * Removes this input from its mixer.
+		 */
+		public void remove() {
+			mixer.remove(this);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.analog;
+
+import com.playsawdust.chipper.glow.audio.ChannelMatrix;
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+
+/**
+ * Opens its source with a fixed channel layout, and remixes it to whatever layout this Iterator is opened with. This
+ * puts a proper up- or downmix in front of a source, instead of relying on the source's own fallback rules, such as
+ * taking only the left channel of a stereo source asked for mono.
+ *
+ * @see ChannelMatrix
+ */
+public class ChannelRemixer implements SampleIterator {
+	protected final SampleIterator source;
+	protected final int sourceChannels;
+	protected final ChannelMatrix customMatrix;
+	protected ChannelMatrix matrix;
+	protected boolean isOpen = false;
+	protected short[] sourceBuffer = new short[0];
+	
+	/**
+	 * Creates a remixer which uses the standard matrix between the source's layout and whatever layout it's opened
+	 * with.
+	 * @param source         the Iterator to remix
+	 * @param sourceChannels the channel count the source will always be opened with
+	 */
+	public ChannelRemixer(SampleIterator source, int sourceChannels) {
+		this.source = source;
+		this.sourceChannels = sourceChannels;
+		this.customMatrix = null;
+	}
+	
+	/**
+	 * Creates a remixer which always uses the given matrix. It can then only be opened with the matrix's output channel
+	 * count.
+	 */
+	public ChannelRemixer(SampleIterator source, ChannelMatrix matrix) {
+		this.source = source;
+		this.sourceChannels = matrix.getInChannels();
+		this.customMatrix = matrix;
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("ChannelRemixer must be closed for this operation.");
+		if (customMatrix!=null && customMatrix.getOutChannels()!=channels) {
+			throw new IllegalArgumentException("This remixer produces "+customMatrix.getOutChannels()+" channels, not "+channels+".");
+		}
+		
+		matrix = (customMatrix!=null) ? customMatrix : ChannelMatrix.of(sourceChannels, channels);
+		source.open(frequency, sourceChannels);
+		isOpen = true;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("ChannelRemixer must be open for this operation.");
+		
+		if (matrix.isIdentity()) {
+			source.next(buffer, offset, frames);
+			return;
+		}
+		
+		int samples = frames*sourceChannels;
+		if (sourceBuffer.length<samples) sourceBuffer = new short[samples];
+		source.next(sourceBuffer, 0, frames);
+		matrix.apply(sourceBuffer, 0, buffer, offset, frames);
+	}
+	
+	@Override
+	public boolean isExhausted() {
+		return source.isExhausted();
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? matrix.getOutChannels() : 0;
+	}
+	
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		source.close();
+		isOpen = false;
+	}
+}
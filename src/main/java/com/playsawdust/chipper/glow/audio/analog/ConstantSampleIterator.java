@@ -9,6 +9,8 @@
 
 package com.playsawdust.chipper.glow.audio.analog;
 
+import java.util.Arrays;
+
 import com.playsawdust.chipper.glow.audio.SampleIterator;
 
 public class ConstantSampleIterator implements SampleIterator {
@@ -24,6 +26,24 @@ public class ConstantSampleIterator implements SampleIterator {
 		System.arraycopy(sampleData, 0, buffer, 0, Math.min(sampleData.length, buffer.length));
 	}
 
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		int channels = sampleData.length;
+		if (channels==1) {
+			Arrays.fill(buffer, offset, offset+frames, sampleData[0]);
+			return;
+		}
+		
+		for(int i=0; i<frames; i++) {
+			System.arraycopy(sampleData, 0, buffer, offset + i*channels, channels);
+		}
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (sampleData==null) ? 0 : sampleData.length;
+	}
+
 	@Override
 	public void close() {
 		sampleData = null;
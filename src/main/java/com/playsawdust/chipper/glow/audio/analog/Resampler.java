@@ -0,0 +1,285 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.analog;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+
+/**
+ * Converts a SampleIterator which only runs at one frequency into one that can be opened at any frequency. The source
+ * is always opened at its own frequency, and its output is resampled to whatever frequency this Iterator is opened
+ * with:
+ *
+ * <pre>
+ * WavSampleIterator wav = WavInput.stream(path); //22050Hz
+ * source.playStream(new Resampler(wav, wav.getFrequency()), 48000, 2);
+ * </pre>
+ *
+ * <p>In {@link Quality#SINC} mode, each output sample is filtered from 16 input samples (more when downsampling) with
+ * a Kaiser-windowed sinc. Filter coefficients are precomputed for 256 fractional positions, interpolated between, and
+ * shared by every Resampler converting at the same ratio, so the per-sample cost is a couple of short dot products.
+ * {@link Quality#LINEAR} interpolates between neighboring samples, which is much cheaper but muddies high frequencies
+ * and lets some aliasing through. If the two frequencies match, samples are passed through untouched.
+ *
+ * <p>The filter is centered on each output frame, and the history starts out primed with silence, so output is aligned
+ * with the source and adds no delay: the first output frame falls on the first source frame. The first few output
+ * frames are filtered partly against that silence.
+ */
+public class Resampler implements SampleIterator {
+	public enum Quality {
+		/** Linear interpolation between adjacent samples */
+		LINEAR,
+		/** Polyphase windowed-sinc filtering */
+		SINC;
+	}
+	
+	private static final int PHASE_BITS = 8;
+	private static final int PHASES = 1 << PHASE_BITS;
+	private static final int SINC_HALF_TAPS = 8;
+	private static final int MAX_HALF_TAPS = 64;
+	private static final double KAISER_BETA = 8.0;
+	/** Fraction of the lower Nyquist frequency left in the passband, leaving the rest as transition band */
+	private static final double PASSBAND = 0.9;
+	
+	private static final ConcurrentHashMap<Long, float[]> TABLES = new ConcurrentHashMap<>();
+	
+	protected final SampleIterator source;
+	protected final int sourceFrequency;
+	protected final Quality quality;
+	
+	protected boolean isOpen = false;
+	protected int numChannels = 0;
+	protected boolean passthrough = false;
+	
+	/** Source frames in input order, starting with the oldest frame the filter still needs */
+	private short[] history = new short[0];
+	private int historyFrames = 0;
+	/** Where the next output frame sits in history, as 32.32 fixed-point frames */
+	private long position = 0L;
+	/** How far to advance position per output frame */
+	private long step = 0L;
+	/** The history index past which the source had run dry, or -1 if it hasn't yet */
+	private int exhaustedAt = -1;
+	
+	private int halfTaps = 1;
+	private float[] table = null;
+	private float[] coeffs = new float[0];
+	
+	/**
+	 * Creates a high-quality Resampler.
+	 * @param source          the Iterator to resample
+	 * @param sourceFrequency the only frequency the source will be opened with
+	 */
+	public Resampler(SampleIterator source, int sourceFrequency) {
+		this(source, sourceFrequency, Quality.SINC);
+	}
+	
+	public Resampler(SampleIterator source, int sourceFrequency, Quality quality) {
+		this.source = source;
+		this.sourceFrequency = sourceFrequency;
+		this.quality = quality;
+	}
+	
+	public SampleIterator getSource() {
+		return source;
+	}
+	
+	public int getSourceFrequency() {
+		return sourceFrequency;
+	}
+	
+	public Quality getQuality() {
+		return quality;
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("Resampler must be closed for this operation.");
+		
+		source.open(sourceFrequency, channels);
+		numChannels = channels;
+		passthrough = frequency==sourceFrequency;
+		isOpen = true;
+		if (passthrough) return;
+		
+		step = Math.round(sourceFrequency / (double) frequency * 0x1p32);
+		if (quality==Quality.LINEAR) {
+			halfTaps = 1;
+			table = null;
+		} else {
+			//When downsampling, pull the cutoff down to the new Nyquist frequency and widen the filter to match
+			double ratio = Math.min(1.0, frequency / (double) sourceFrequency);
+			halfTaps = Math.min(MAX_HALF_TAPS, (int) Math.ceil(SINC_HALF_TAPS / ratio));
+			table = getTable(halfTaps, (float) (PASSBAND * ratio));
+		}
+		coeffs = new float[halfTaps*2];
+		
+		//Prime the history with silence so the first source frame lines up with the first output frame
+		historyFrames = halfTaps-1;
+		if (history.length<historyFrames*channels) history = new short[historyFrames*channels];
+		Arrays.fill(history, 0, historyFrames*channels, (short) 0);
+		position = (long) (halfTaps-1) << 32;
+		exhaustedAt = -1;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("Resampler must be open for this operation.");
+		if (passthrough) {
+			source.next(buffer, offset, frames);
+			return;
+		}
+		if (frames<=0) return;
+		
+		int channels = numChannels;
+		int taps = halfTaps*2;
+		
+		//Pull enough source frames to cover the filter for the last output frame of this block
+		long last = position + (frames-1)*step;
+		int needed = (int) (last >>> 32) + halfTaps + 1;
+		if (needed>historyFrames) {
+			if (history.length<needed*channels) history = Arrays.copyOf(history, needed*channels*3/2);
+			source.next(history, historyFrames*channels, needed-historyFrames);
+			historyFrames = needed;
+			if (exhaustedAt<0 && source.isExhausted()) exhaustedAt = needed;
+		}
+		
+		short[] in = history;
+		float[] c = coeffs;
+		long pos = position;
+		for(int i=0; i<frames; i++) {
+			int start = (int) (pos >>> 32) - halfTaps + 1;
+			int fraction = (int) pos; //The low 32 bits, as an unsigned fraction of a frame
+			
+			if (table==null) {
+				float t = (fraction >>> 8) * 0x1p-24f;
+				c[0] = 1f - t;
+				c[1] = t;
+			} else {
+				int phase = fraction >>> (32 - PHASE_BITS);
+				float t = ((fraction << PHASE_BITS) >>> 8) * 0x1p-24f;
+				int row = phase*taps;
+				float[] h = table;
+				for(int k=0; k<taps; k++) {
+					float a = h[row+k];
+					c[k] = a + (h[row+taps+k] - a) * t;
+				}
+			}
+			
+			int outBase = offset + i*channels;
+			for(int ch=0; ch<channels; ch++) {
+				float acc = 0f;
+				int inIndex = start*channels + ch;
+				for(int k=0; k<taps; k++) {
+					acc += in[inIndex] * c[k];
+					inIndex += channels;
+				}
+				int sample = Math.round(acc);
+				if (sample>Short.MAX_VALUE) sample = Short.MAX_VALUE;
+				if (sample<Short.MIN_VALUE) sample = Short.MIN_VALUE;
+				buffer[outBase+ch] = (short) sample;
+			}
+			
+			pos += step;
+		}
+		
+		//Drop the frames no future output frame can reach
+		int drop = (int) (pos >>> 32) - halfTaps + 1;
+		if (drop>0) {
+			drop = Math.min(drop, historyFrames);
+			System.arraycopy(in, drop*channels, in, 0, (historyFrames-drop)*channels);
+			historyFrames -= drop;
+			pos -= (long) drop << 32;
+			if (exhaustedAt>=0) exhaustedAt = Math.max(0, exhaustedAt-drop);
+		}
+		position = pos;
+	}
+	
+	/**
+	 * The resampler is exhausted once its source is, and every source frame has been centered under the filter.
+	 */
+	@Override
+	public boolean isExhausted() {
+		if (passthrough) return source.isExhausted();
+		return exhaustedAt>=0 && (position >>> 32) >= exhaustedAt;
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? numChannels : 0;
+	}
+	
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		source.close();
+		isOpen = false;
+	}
+	
+	/**
+	 * Gets the shared coefficient table for a filter, building it if this is the first Resampler to need it.
+	 */
+	private static float[] getTable(int halfTaps, float cutoff) {
+		long key = ((long) halfTaps << 32) | Float.floatToIntBits(cutoff);
+		return TABLES.computeIfAbsent(key, (it)->buildTable(halfTaps, cutoff));
+	}
+	
+	/**
+	 * Builds PHASES+1 rows of filter taps. Row p filters for an output position p/PHASES of a frame past the center
+	 * tap; the extra row lets the last phase interpolate towards a whole frame. Each row is normalized to unity gain.
+	 */
+	private static float[] buildTable(int halfTaps, double cutoff) {
+		int taps = halfTaps*2;
+		float[] result = new float[(PHASES+1)*taps];
+		double norm = besselI0(KAISER_BETA);
+		
+		for(int p=0; p<=PHASES; p++) {
+			double fraction = p / (double) PHASES;
+			double sum = 0.0;
+			for(int k=0; k<taps; k++) {
+				double distance = k - halfTaps + 1 - fraction;
+				double x = distance / halfTaps;
+				double window = (Math.abs(x)>=1.0) ? 0.0 : besselI0(KAISER_BETA * Math.sqrt(1.0 - x*x)) / norm;
+				double value = cutoff * sinc(cutoff * distance) * window;
+				result[p*taps+k] = (float) value;
+				sum += value;
+			}
+			for(int k=0; k<taps; k++) result[p*taps+k] /= sum;
+		}
+		
+		return result;
+	}
+	
+	private static double sinc(double x) {
+		if (x==0) return 1.0;
+		double px = Math.PI * x;
+		return Math.sin(px) / px;
+	}
+	
+	/** Zeroth-order modified Bessel function of the first kind, by its power series */
+	private static double besselI0(double x) {
+		double sum = 1.0;
+		double term = 1.0;
+		double halfX = x / 2.0;
+		for(int k=1; k<50; k++) {
+			term *= (halfX / k) * (halfX / k);
+			sum += term;
+			if (term < sum*1e-12) break;
+		}
+		return sum;
+	}
+}
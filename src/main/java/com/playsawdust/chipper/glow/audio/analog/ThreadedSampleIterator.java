@@ -0,0 +1,182 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.analog;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+import com.playsawdust.chipper.glow.audio.SampleRingBuffer;
+
+/**
+ * Runs another SampleIterator on its own thread, and hands its output over through a {@link SampleRingBuffer}. Put one
+ * in front of an expensive source, such as a Vorbis decoder or a long effect chain, before streaming it:
+ *
+ * <pre>
+ * source.playStream(new ThreadedSampleIterator(VorbisInput.stream(path)), 44100, 2);
+ * </pre>
+ *
+ * <p>The consumer side never blocks and never allocates; {@link #next(short[], int, int)} is a copy out of the ring. If
+ * the decode thread falls behind, the missing frames are played as silence and counted by {@link #getUnderruns()},
+ * rather than stalling the AL thread. The ring is filled once on the opening thread before the decode thread starts, so
+ * a stream starts with a full ring. The source is only ever touched by one thread at a time.
+ */
+public class ThreadedSampleIterator implements SampleIterator {
+	/** About 370ms at 44.1kHz, comfortably more than one poll of a default stream */
+	public static final int DEFAULT_RING_FRAMES = 16384;
+	/** How many frames the decode thread asks its source for at a time */
+	private static final int DECODE_FRAMES = 1024;
+	/** How long the decode thread sleeps when the ring is full */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	
+	protected final SampleIterator source;
+	protected final int ringFrames;
+	
+	protected boolean isOpen = false;
+	protected int numChannels = 0;
+	private SampleRingBuffer ring;
+	private Thread decodeThread;
+	private volatile boolean running = false;
+	/** Set by the decode thread once the source is exhausted and everything it produced is in the ring */
+	private volatile boolean sourceExhausted = false;
+	private volatile Throwable failure = null;
+	private long underruns = 0L;
+	
+	public ThreadedSampleIterator(SampleIterator source) {
+		this(source, DEFAULT_RING_FRAMES);
+	}
+	
+	/**
+	 * @param source     the Iterator to run on the decode thread
+	 * @param ringFrames how many frames may be decoded ahead of the consumer
+	 */
+	public ThreadedSampleIterator(SampleIterator source, int ringFrames) {
+		this.source = source;
+		this.ringFrames = ringFrames;
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("ThreadedSampleIterator must be closed for this operation.");
+		
+		source.open(frequency, channels);
+		numChannels = channels;
+		if (ring==null || ring.getChannelCount()!=channels || ring.getCapacity()<ringFrames) {
+			ring = new SampleRingBuffer(ringFrames, channels);
+		} else {
+			ring.skipAll();
+		}
+		sourceExhausted = false;
+		failure = null;
+		underruns = 0L;
+		
+		//Prime the ring here, so playback doesn't start by waiting on the new thread
+		fill();
+		
+		running = true;
+		decodeThread = new Thread(this::decodeLoop, "glow-audio-decoder");
+		decodeThread.setDaemon(true);
+		decodeThread.start();
+		isOpen = true;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("ThreadedSampleIterator must be open for this operation.");
+		
+		int read = ring.read(buffer, offset, frames);
+		if (read<frames) {
+			Arrays.fill(buffer, offset + read*numChannels, offset + frames*numChannels, (short) 0);
+			if (!sourceExhausted) underruns++;
+		}
+	}
+	
+	/**
+	 * The threaded iterator is exhausted once its source is, and the consumer has read everything it produced.
+	 */
+	@Override
+	public boolean isExhausted() {
+		if (!isOpen) return false;
+		if (failure!=null) return true;
+		return sourceExhausted && ring.getReadable()==0;
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? numChannels : 0;
+	}
+	
+	/**
+	 * Stops the decode thread, waiting for it to finish the block it's working on, and closes the source.
+	 */
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		running = false;
+		LockSupport.unpark(decodeThread);
+		boolean interrupted = false;
+		while(decodeThread.isAlive()) {
+			try {
+				decodeThread.join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		decodeThread = null;
+		source.close();
+		isOpen = false;
+	}
+	
+	/**
+	 * Gets how many times the consumer asked for frames the decode thread hadn't produced yet, since the last open.
+	 */
+	public long getUnderruns() {
+		return underruns;
+	}
+	
+	/**
+	 * Gets the exception that stopped the decode thread, if any. A failed iterator reports itself exhausted, so a stream
+	 * fed from it ends rather than playing silence forever.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+	
+	private void decodeLoop() {
+		try {
+			while(running && !sourceExhausted) {
+				if (fill()==0) LockSupport.parkNanos(IDLE_NANOS);
+			}
+		} catch (Throwable t) {
+			failure = t;
+		}
+	}
+	
+	/**
+	 * Writes as much of the source into the ring as fits. Returns how many frames were written.
+	 */
+	private int fill() {
+		int total = 0;
+		while(!sourceExhausted) {
+			int written = ring.write(source, Math.min(DECODE_FRAMES, ring.getWritable()));
+			if (written==0) break;
+			total += written;
+			if (source.isExhausted()) sourceExhausted = true;
+		}
+		return total;
+	}
+}
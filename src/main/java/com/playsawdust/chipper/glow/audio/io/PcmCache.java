@@ -0,0 +1,315 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import com.playsawdust.chipper.glow.audio.BufferedSound;
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+import com.playsawdust.chipper.glow.audio.analog.ChannelRemixer;
+import com.playsawdust.chipper.glow.audio.analog.Resampler;
+
+/**
+ * A directory of decoded audio, already converted to the frequency and channel layout it will be played at. The first
+ * load of a file decodes, remixes and resamples it, and writes the result into the cache; every later load, including
+ * in later runs, maps the cached copy straight into a {@link BufferedSound} without decoding anything.
+ *
+ * <pre>
+ * PcmCache cache = new PcmCache(Paths.get("cache/audio"));
+ * Sound footstep = cache.load(Paths.get("sounds/footstep.wav"), system.getDeviceFrequency(), 1);
+ * </pre>
+ *
+ * <p>Entries are named by a SHA-256 hash of the source file's contents together with the conversion settings, so an
+ * edited source file or a different device rate simply misses the cache; stale entries are never served, just left
+ * behind until {@link #clear()}. Hashing means reading the whole source, so alongside each entry the cache keeps a
+ * small stamp file, named by the source's path, size and modification time, which remembers the content hash. A load
+ * whose stamp is present goes straight to the entry without opening the source at all; only a new, moved or touched
+ * source is hashed again. Entries and stamps are written to a temporary file and moved into place, so a crash
+ * mid-write can't leave a corrupt one, and any number of threads or processes may share one cache directory.
+ *
+ * <p>WAV and Ogg Vorbis sources are accepted, chosen by file extension.
+ */
+public class PcmCache {
+	private static final int MAGIC = 0x43504C47; //"GLPC" read as little-endian
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final String EXTENSION = ".pcm";
+	private static final String STAMP_EXTENSION = ".key";
+	/** Length of a hex SHA-256 hash */
+	private static final int KEY_LENGTH = 64;
+	private static final int HASH_BLOCK = 64*1024;
+	/** How many frames are converted per block while filling an entry */
+	private static final int BLOCK_FRAMES = 4096;
+	
+	private final Path directory;
+	private final Resampler.Quality quality;
+	/** Read buffers for hashing source files, kept per thread since loads may run concurrently */
+	private final ThreadLocal<ByteBuffer> hashBuffers = ThreadLocal.withInitial(()->ByteBuffer.allocate(HASH_BLOCK));
+	
+	/**
+	 * Opens a cache directory, creating it if needed. Conversions use {@link Resampler.Quality#SINC}.
+	 */
+	public PcmCache(Path directory) throws IOException {
+		this(directory, Resampler.Quality.SINC);
+	}
+	
+	public PcmCache(Path directory, Resampler.Quality quality) throws IOException {
+		this.directory = directory;
+		this.quality = quality;
+		Files.createDirectories(directory);
+	}
+	
+	public Path getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Gets a source file as 16-bit PCM at the given frequency and channel count, from the cache if it's there, and
+	 * otherwise by converting it and adding it to the cache. If the source hasn't changed size or modification time
+	 * since it was last loaded, a hit doesn't read the source at all; otherwise the source is read in full to hash it,
+	 * which still costs far less than decoding it.
+	 * @param source    a WAV or Ogg Vorbis file
+	 * @param frequency the frequency the Sound should have, usually the device's
+	 * @param channels  the channel count the Sound should have
+	 * @return a Sound backed by the mapped cache entry
+	 * @throws IOException if the source can't be read or decoded, or the cache can't be written
+	 */
+	public BufferedSound load(Path source, int frequency, int channels) throws IOException {
+		String settings = "v"+VERSION+":"+frequency+"Hz:"+channels+"ch:"+quality+":"+(isVorbis(source) ? "vorbis" : "wav");
+		Path stamp = directory.resolve(stampKey(source, settings) + STAMP_EXTENSION);
+		
+		String key = readStamp(stamp);
+		if (key!=null) {
+			BufferedSound cached = map(directory.resolve(key + EXTENSION), frequency, channels);
+			if (cached!=null) return cached;
+		}
+		
+		key = contentKey(source, settings);
+		Path entry = directory.resolve(key + EXTENSION);
+		BufferedSound result = map(entry, frequency, channels);
+		if (result==null) {
+			Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+			try {
+				convert(source, frequency, channels, temp);
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			
+			result = map(entry, frequency, channels);
+			if (result==null) throw new IOException("Cache entry "+entry+" was unreadable immediately after being written.");
+		}
+		
+		writeStamp(stamp, key);
+		return result;
+	}
+	
+	/**
+	 * Deletes every entry and stamp in the cache. Sounds already loaded from it stay valid on systems which allow deleting
+	 * mapped files; elsewhere, entries that are in use are skipped.
+	 */
+	public void clear() throws IOException {
+		try(DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*{"+EXTENSION+","+STAMP_EXTENSION+"}")) {
+			for(Path entry : entries) {
+				try {
+					Files.deleteIfExists(entry);
+				} catch (IOException ex) {
+					//Still mapped somewhere; it'll be overwritten or cleared later
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Maps a cache entry, or returns null if it doesn't exist or doesn't hold what's expected.
+	 */
+	private static BufferedSound map(Path entry, int frequency, int channels) throws IOException {
+		try(FileChannel in = FileChannel.open(entry, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size<HEADER_SIZE || size>Integer.MAX_VALUE) return null;
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining()) {
+				if (in.read(header, header.position())<0) return null;
+			}
+			header.flip();
+			if (header.getInt()!=MAGIC || header.getShort()!=VERSION) return null;
+			if ((header.getShort() & 0xFFFF)!=channels || header.getInt()!=frequency) return null;
+			long frames = Integer.toUnsignedLong(header.getInt());
+			long length = frames*channels*2;
+			if (HEADER_SIZE+length!=size) return null; //Truncated by something other than us
+			
+			MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length);
+			ByteBuffer samples = mapped;
+			if (ByteOrder.nativeOrder()!=ByteOrder.LITTLE_ENDIAN) {
+				//The AL wants native-order samples, so a big-endian machine has to pay for a swapped copy
+				samples = ByteBuffer.allocateDirect((int) length).order(ByteOrder.nativeOrder());
+				samples.asShortBuffer().put(mapped.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+			}
+			return new BufferedSound(frequency, channels, samples.order(ByteOrder.nativeOrder()).asShortBuffer());
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Decodes, remixes and resamples a source file into a new cache entry at dest.
+	 */
+	private void convert(Path source, int frequency, int channels, Path dest) throws IOException {
+		SampleIterator decoder;
+		int sourceFrequency;
+		int sourceChannels;
+		long sourceFrames;
+		if (isVorbis(source)) {
+			VorbisSampleIterator vorbis = VorbisInput.stream(source);
+			decoder = vorbis;
+			sourceFrequency = vorbis.getFrequency();
+			sourceChannels = Math.min(vorbis.getSourceChannelCount(), 2); //Surround is folded to stereo while decoding
+			sourceFrames = vorbis.getFrameCount();
+		} else {
+			WavSampleIterator wav = WavInput.stream(source);
+			decoder = wav;
+			sourceFrequency = wav.getFrequency();
+			sourceChannels = wav.getSourceChannelCount();
+			sourceFrames = wav.getFrameCount();
+		}
+		
+		SampleIterator pipeline = new ChannelRemixer(decoder, sourceChannels);
+		if (sourceFrequency!=frequency) pipeline = new Resampler(pipeline, sourceFrequency, quality);
+		long frames = (sourceFrames*frequency + sourceFrequency - 1) / sourceFrequency;
+		if (frames*channels*2 > Integer.MAX_VALUE-HEADER_SIZE) throw new IOException(source+" is too long to cache.");
+		
+		ByteBuffer out = ByteBuffer.allocateDirect(BLOCK_FRAMES*channels*2).order(ByteOrder.LITTLE_ENDIAN);
+		short[] block = new short[BLOCK_FRAMES*channels];
+		try(FileChannel file = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			out.putInt(MAGIC);
+			out.putShort((short) VERSION);
+			out.putShort((short) channels);
+			out.putInt(frequency);
+			out.putInt((int) frames);
+			out.flip();
+			writeFully(file, out);
+			
+			pipeline.open(frequency, channels);
+			try {
+				for(long done=0; done<frames; done+=BLOCK_FRAMES) {
+					int count = (int) Math.min(BLOCK_FRAMES, frames-done);
+					pipeline.next(block, 0, count);
+					out.clear();
+					out.asShortBuffer().put(block, 0, count*channels);
+					out.limit(count*channels*2);
+					writeFully(file, out);
+				}
+			} finally {
+				pipeline.close();
+			}
+			file.force(true);
+		}
+	}
+	
+	/**
+	 * Hashes the source file's contents together with everything that affects the converted result.
+	 */
+	private String contentKey(Path source, String settings) throws IOException {
+		MessageDigest digest = sha256();
+		ByteBuffer buffer = hashBuffers.get();
+		buffer.clear();
+		try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+			while(in.read(buffer)>=0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		digest.update(settings.getBytes(StandardCharsets.UTF_8));
+		return hex(digest.digest());
+	}
+	
+	/**
+	 * Hashes where the source file is and what its size and modification time are, together with the conversion
+	 * settings. This only needs the file's attributes, not its contents.
+	 */
+	private static String stampKey(Path source, String settings) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+		String stamp = source.toAbsolutePath().normalize()
+				+ "\0" + attributes.size()
+				+ "\0" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+				+ "\0" + settings;
+		return hex(sha256().digest(stamp.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Reads the content key a stamp file remembers, or returns null if there's no stamp or it doesn't hold a key.
+	 */
+	private static String readStamp(Path stamp) throws IOException {
+		String key;
+		try {
+			key = Files.readString(stamp, StandardCharsets.US_ASCII);
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+		if (key.length()!=KEY_LENGTH) return null;
+		for(int i=0; i<KEY_LENGTH; i++) {
+			if (Character.digit(key.charAt(i), 16)<0) return null;
+		}
+		return key;
+	}
+	
+	private void writeStamp(Path stamp, String key) throws IOException {
+		Path temp = Files.createTempFile(directory, stamp.getFileName().toString(), ".tmp");
+		try {
+			Files.writeString(temp, key, StandardCharsets.US_ASCII);
+			Files.move(temp, stamp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Every Java platform is required to support SHA-256.", ex);
+		}
+	}
+	
+	private static String hex(byte[] hash) {
+		StringBuilder result = new StringBuilder(hash.length*2);
+		for(byte b : hash) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+	
+	private static boolean isVorbis(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		return name.endsWith(".ogg") || name.endsWith(".oga");
+	}
+	
+	private static void writeFully(FileChannel out, ByteBuffer data) throws IOException {
+		while(data.hasRemaining()) out.write(data);
+	}
+}
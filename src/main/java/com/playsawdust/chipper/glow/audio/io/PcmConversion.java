@@ -0,0 +1,131 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Bulk conversion of packed PCM samples, as found in WAV files, into 16-bit signed samples. Each kernel converts a
+ * whole block in one tight loop: byte order is settled once per call, and there is no branching per sample. Wider
+ * samples are truncated to their 16 most significant bits.
+ *
+ * <p>All methods read count samples starting at the source buffer's position, and advance that position past them.
+ * Samples are read in the byte order passed in, which is little-endian for RIFF files and big-endian for RIFX files;
+ * the source buffer's own byte order is ignored and left unchanged.
+ */
+public final class PcmConversion {
+	private PcmConversion() {}
+	
+	/**
+	 * Converts count samples of the given width into dest.
+	 * @param bytesPerSample 1, 2, 3, or 4
+	 */
+	public static void toShorts(int bytesPerSample, ByteBuffer src, ByteOrder order, short[] dest, int destOffset, int count) {
+		switch(bytesPerSample) {
+		case 1: u8ToShorts(src, dest, destOffset, count); break;
+		case 2: s16ToShorts(src, order, dest, destOffset, count); break;
+		case 3: s24ToShorts(src, order, dest, destOffset, count); break;
+		case 4: s32ToShorts(src, order, dest, destOffset, count); break;
+		default: throw new IllegalArgumentException("Can't convert "+bytesPerSample+"-byte samples.");
+		}
+	}
+	
+	/**
+	 * Converts count samples of the given width into dest, starting at dest's position and advancing it.
+	 * @param bytesPerSample 1, 2, 3, or 4
+	 */
+	public static void toShorts(int bytesPerSample, ByteBuffer src, ByteOrder order, ShortBuffer dest, int count) {
+		switch(bytesPerSample) {
+		case 1: u8ToShorts(src, dest, count); break;
+		case 2: s16ToShorts(src, order, dest, count); break;
+		case 3: s24ToShorts(src, order, dest, count); break;
+		case 4: s32ToShorts(src, order, dest, count); break;
+		default: throw new IllegalArgumentException("Can't convert "+bytesPerSample+"-byte samples.");
+		}
+	}
+	
+	/** Unsigned 8-bit samples, biased around 128 */
+	public static void u8ToShorts(ByteBuffer src, short[] dest, int destOffset, int count) {
+		int pos = src.position();
+		for(int i=0; i<count; i++) {
+			dest[destOffset+i] = (short) ((src.get(pos+i) ^ 0x80) << 8);
+		}
+		src.position(pos+count);
+	}
+	
+	public static void s16ToShorts(ByteBuffer src, ByteOrder order, short[] dest, int destOffset, int count) {
+		src.duplicate().order(order).asShortBuffer().get(dest, destOffset, count);
+		src.position(src.position() + count*2);
+	}
+	
+	public static void s24ToShorts(ByteBuffer src, ByteOrder order, short[] dest, int destOffset, int count) {
+		ByteBuffer in = src.duplicate().order(order);
+		int high = (order==ByteOrder.LITTLE_ENDIAN) ? 1 : 0; //Where the upper two bytes of each triple start
+		int pos = src.position();
+		for(int i=0; i<count; i++) {
+			dest[destOffset+i] = in.getShort(pos + i*3 + high);
+		}
+		src.position(pos + count*3);
+	}
+	
+	public static void s32ToShorts(ByteBuffer src, ByteOrder order, short[] dest, int destOffset, int count) {
+		ByteBuffer in = src.duplicate().order(order);
+		int high = (order==ByteOrder.LITTLE_ENDIAN) ? 2 : 0;
+		int pos = src.position();
+		for(int i=0; i<count; i++) {
+			dest[destOffset+i] = in.getShort(pos + i*4 + high);
+		}
+		src.position(pos + count*4);
+	}
+	
+	/** Unsigned 8-bit samples, biased around 128 */
+	public static void u8ToShorts(ByteBuffer src, ShortBuffer dest, int count) {
+		int pos = src.position();
+		int destPos = dest.position();
+		for(int i=0; i<count; i++) {
+			dest.put(destPos+i, (short) ((src.get(pos+i) ^ 0x80) << 8));
+		}
+		src.position(pos+count);
+		dest.position(destPos+count);
+	}
+	
+	public static void s16ToShorts(ByteBuffer src, ByteOrder order, ShortBuffer dest, int count) {
+		ShortBuffer samples = src.duplicate().order(order).asShortBuffer();
+		samples.limit(count);
+		dest.put(samples);
+		src.position(src.position() + count*2);
+	}
+	
+	public static void s24ToShorts(ByteBuffer src, ByteOrder order, ShortBuffer dest, int count) {
+		ByteBuffer in = src.duplicate().order(order);
+		int high = (order==ByteOrder.LITTLE_ENDIAN) ? 1 : 0; //Where the upper two bytes of each triple start
+		int pos = src.position();
+		int destPos = dest.position();
+		for(int i=0; i<count; i++) {
+			dest.put(destPos+i, in.getShort(pos + i*3 + high));
+		}
+		src.position(pos + count*3);
+		dest.position(destPos+count);
+	}
+	
+	public static void s32ToShorts(ByteBuffer src, ByteOrder order, ShortBuffer dest, int count) {
+		ByteBuffer in = src.duplicate().order(order);
+		int high = (order==ByteOrder.LITTLE_ENDIAN) ? 2 : 0;
+		int pos = src.position();
+		int destPos = dest.position();
+		for(int i=0; i<count; i++) {
+			dest.put(destPos+i, in.getShort(pos + i*4 + high));
+		}
+		src.position(pos + count*4);
+		dest.position(destPos+count);
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.Set;
+
+import com.playsawdust.chipper.glow.audio.AdpcmSound;
+import com.playsawdust.chipper.glow.audio.BufferedSound;
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * Many Sounds packed into one memory-mapped file. Opening a bank reads only its index; looking up a Sound by name is
+ * a hash lookup plus a view onto the mapping, with no file opened or parsed, and the sample data is paged in by the OS
+ * as it's first touched. Build banks with {@link SoundBankWriter}.
+ *
+ * <p>Each name always resolves to the same Sound instance, so the AL buffer cache can share its upload between every
+ * caller. PCM and ADPCM entries read the mapping in place. Ogg Vorbis entries are decoded onto the heap the first time
+ * they're asked for as a Sound, or can be streamed straight out of the mapping with {@link #stream(String)}.
+ *
+ * <p>The file is little-endian:
+ * <pre>
+ * header:  "GLSB", u16 version, u16 reserved, u32 entry count, u32 index length in bytes
+ * entry:   u16 name length, name as UTF-8, u8 format, u8 channels, u16 samples per block (ADPCM only),
+ *          u32 frequency, u32 frames, u64 payload offset, u64 payload length
+ * payload: 16-bit PCM samples, IMA ADPCM blocks, or a whole Ogg Vorbis file, each starting on a 16-byte boundary
+ * </pre>
+ * Banks are limited to 2GiB, the most a single mapping can hold.
+ */
+public class SoundBank {
+	public enum Format {
+		/** 16-bit signed little-endian PCM */
+		PCM16,
+		/** IMA ADPCM blocks, as described in {@link AdpcmSound} */
+		IMA_ADPCM,
+		/** A complete Ogg Vorbis file */
+		VORBIS;
+	}
+	
+	static final int MAGIC = 0x42534C47; //"GLSB" read as little-endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int ENTRY_FIXED_SIZE = 2 + 1 + 1 + 2 + 4 + 4 + 8 + 8;
+	static final int PAYLOAD_ALIGNMENT = 16;
+	
+	private final ByteBuffer file;
+	private final HashMap<String, Integer> index;
+	private final Format[] formats;
+	private final int[] channels;
+	private final int[] samplesPerBlock;
+	private final int[] frequencies;
+	private final int[] frames;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final Sound[] sounds;
+	
+	private SoundBank(ByteBuffer file, int count) {
+		this.file = file;
+		this.index = new HashMap<>(count*2);
+		this.formats = new Format[count];
+		this.channels = new int[count];
+		this.samplesPerBlock = new int[count];
+		this.frequencies = new int[count];
+		this.frames = new int[count];
+		this.offsets = new int[count];
+		this.lengths = new int[count];
+		this.sounds = new Sound[count];
+	}
+	
+	/**
+	 * Maps a bank file and reads its index. The mapping stays valid until the returned bank and every Sound taken from
+	 * it are garbage collected.
+	 * @throws IOException if the file can't be read or is not a valid bank
+	 */
+	public static SoundBank open(Path path) throws IOException {
+		MappedByteBuffer mapped;
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size>Integer.MAX_VALUE) throw new IOException("File is too large to map.");
+			mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		return read(mapped);
+	}
+	
+	/**
+	 * Reads a bank that's already in memory. Entries are views onto the buffer, so it MUST NOT be modified afterwards.
+	 * @param file a direct buffer holding the whole bank, from position 0
+	 * @throws IOException if the data is not a valid bank
+	 */
+	public static SoundBank read(ByteBuffer file) throws IOException {
+		if (!file.isDirect()) throw new IllegalArgumentException("Sound banks must be read from direct buffers.");
+		ByteBuffer in = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		in.position(0);
+		
+		try {
+			if (in.getInt()!=MAGIC) throw new IOException("Not a sound bank.");
+			int version = in.getShort() & 0xFFFF;
+			if (version!=VERSION) throw new IOException("Unsupported sound bank version "+version+".");
+			in.getShort();
+			int count = in.getInt();
+			int indexLength = in.getInt();
+			if (count<0 || indexLength<0 || HEADER_SIZE+(long) indexLength>in.limit()) throw new IOException("Sound bank index is corrupt.");
+			in.limit(HEADER_SIZE + indexLength);
+			
+			SoundBank result = new SoundBank(file, count);
+			Format[] formatValues = Format.values();
+			for(int i=0; i<count; i++) {
+				byte[] name = new byte[in.getShort() & 0xFFFF];
+				in.get(name);
+				int format = in.get() & 0xFF;
+				if (format>=formatValues.length) throw new IOException("Unknown payload format "+format+".");
+				result.formats[i] = formatValues[format];
+				result.channels[i] = in.get() & 0xFF;
+				result.samplesPerBlock[i] = in.getShort() & 0xFFFF;
+				result.frequencies[i] = in.getInt();
+				result.frames[i] = in.getInt();
+				long offset = in.getLong();
+				long length = in.getLong();
+				if (offset<0 || length<0 || offset+length>file.limit()) throw new IOException("Entry "+i+" lies outside the file.");
+				result.offsets[i] = (int) offset;
+				result.lengths[i] = (int) length;
+				
+				if (result.index.put(new String(name, StandardCharsets.UTF_8), i)!=null) {
+					throw new IOException("Duplicate entry name \""+new String(name, StandardCharsets.UTF_8)+"\".");
+				}
+			}
+			return result;
+		} catch (BufferUnderflowException ex) {
+			throw new IOException("Sound bank index is truncated.", ex);
+		}
+	}
+	
+	/**
+	 * Gets the name of every entry in this bank.
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+	
+	public int size() {
+		return formats.length;
+	}
+	
+	public boolean contains(String name) {
+		return index.containsKey(name);
+	}
+	
+	/**
+	 * Gets how an entry's payload is stored, or empty if there is no such entry.
+	 */
+	public Optional<Format> getFormat(String name) {
+		Integer i = index.get(name);
+		return (i==null) ? Optional.empty() : Optional.of(formats[i]);
+	}
+	
+	/**
+	 * Gets an entry as a Sound. Repeated calls for one name return the same instance.
+	 * @return the Sound, or empty if there is no such entry
+	 * @throws UncheckedIOException if the entry is Ogg Vorbis and can't be decoded
+	 */
+	public synchronized Optional<Sound> getSound(String name) {
+		Integer i = index.get(name);
+		if (i==null) return Optional.empty();
+		
+		Sound result = sounds[i];
+		if (result==null) {
+			result = createSound(i);
+			sounds[i] = result;
+		}
+		return Optional.of(result);
+	}
+	
+	/**
+	 * Streams an Ogg Vorbis entry straight out of the mapping, without decoding it up front.
+	 * @return a closed SampleIterator for the entry, or empty if there is no such entry
+	 * @throws IllegalArgumentException if the entry isn't Ogg Vorbis
+	 */
+	public Optional<VorbisSampleIterator> stream(String name) {
+		Integer i = index.get(name);
+		if (i==null) return Optional.empty();
+		if (formats[i]!=Format.VORBIS) throw new IllegalArgumentException("\""+name+"\" is "+formats[i]+", not Ogg Vorbis.");
+		
+		try {
+			return Optional.of(VorbisInput.stream(payload(i)));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	private Sound createSound(int i) {
+		ByteBuffer payload = payload(i);
+		switch(formats[i]) {
+		case PCM16:
+			if (ByteOrder.nativeOrder()!=ByteOrder.LITTLE_ENDIAN) {
+				//The AL wants native-order samples, so a big-endian machine has to pay for a swapped copy
+				ByteBuffer swapped = ByteBuffer.allocateDirect(payload.remaining()).order(ByteOrder.nativeOrder());
+				swapped.asShortBuffer().put(payload.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+				payload = swapped;
+			}
+			return new BufferedSound(frequencies[i], channels[i], payload.order(ByteOrder.nativeOrder()).asShortBuffer());
+		case IMA_ADPCM:
+			return new AdpcmSound(frequencies[i], channels[i], frames[i], samplesPerBlock[i], payload);
+		case VORBIS:
+			try {
+				return VorbisInput.read(payload);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		default:
+			throw new IllegalStateException();
+		}
+	}
+	
+	private ByteBuffer payload(int i) {
+		return file.slice(offsets[i], lengths[i]);
+	}
+}
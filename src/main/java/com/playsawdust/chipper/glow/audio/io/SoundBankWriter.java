@@ -0,0 +1,223 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.playsawdust.chipper.glow.audio.AdpcmSound;
+import com.playsawdust.chipper.glow.audio.BufferedSound;
+import com.playsawdust.chipper.glow.audio.Sound;
+
+/**
+ * Builds a {@link SoundBank} file. Add entries, then write them all out at once:
+ *
+ * <pre>
+ * SoundBankWriter writer = new SoundBankWriter();
+ * writer.add("ui/click", WavInput.read(in));
+ * writer.addVorbis("music/title", Files.readAllBytes(titleOgg));
+ * writer.write(Paths.get("sounds.bank"));
+ * </pre>
+ *
+ * <p>This class also works as a command-line tool which packs every .wav and .ogg file under a directory, named by
+ * their path relative to it without the extension:
+ *
+ * <pre>
+ * java -cp ... com.playsawdust.chipper.glow.audio.io.SoundBankWriter sounds.bank assets/sounds [--adpcm]
+ * </pre>
+ */
+public class SoundBankWriter {
+	private final ArrayList<Entry> entries = new ArrayList<>();
+	private final HashSet<String> names = new HashSet<>();
+	
+	/**
+	 * Adds a Sound. ADPCM Sounds are stored compressed, and every other Sound as 16-bit PCM.
+	 */
+	public void add(String name, Sound sound) {
+		if (sound instanceof AdpcmSound) {
+			AdpcmSound adpcm = (AdpcmSound) sound;
+			ByteBuffer blocks = adpcm.getBlocks();
+			blocks.limit(adpcm.getEncodedSize());
+			add(new Entry(name, SoundBank.Format.IMA_ADPCM, sound.getChannelCount(), adpcm.getSamplesPerBlock(),
+					sound.getFrequency(), sound.getSampleCount()/sound.getChannelCount(), blocks));
+			return;
+		}
+		
+		ByteBuffer pcm = ByteBuffer.allocate(sound.getSampleCount()*2).order(ByteOrder.LITTLE_ENDIAN);
+		if (sound instanceof BufferedSound) {
+			pcm.asShortBuffer().put(((BufferedSound) sound).getBuffer());
+		} else {
+			pcm.asShortBuffer().put(sound.getData());
+		}
+		pcm.clear();
+		add(new Entry(name, SoundBank.Format.PCM16, sound.getChannelCount(), 0,
+				sound.getFrequency(), sound.getSampleCount()/sound.getChannelCount(), pcm));
+	}
+	
+	/**
+	 * Adds a complete Ogg Vorbis file, which is stored as-is.
+	 * @throws IOException if the data is not an Ogg Vorbis file
+	 */
+	public void addVorbis(String name, byte[] file) throws IOException {
+		ByteBuffer data = ByteBuffer.allocateDirect(file.length);
+		data.put(file).flip();
+		VorbisSampleIterator info = VorbisInput.stream(data);
+		if (info.getSourceChannelCount()>255) throw new IOException("Too many channels.");
+		add(new Entry(name, SoundBank.Format.VORBIS, info.getSourceChannelCount(), 0,
+				info.getFrequency(), (int) Math.min(Integer.MAX_VALUE, info.getFrameCount()), data));
+	}
+	
+	/**
+	 * Writes every entry added so far to a bank file. The bank is written beside the destination and moved into place
+	 * once complete, so a reader never sees a partial bank.
+	 */
+	public void write(Path path) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(SoundBank.HEADER_SIZE + indexLength()).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(SoundBank.MAGIC);
+		header.putShort((short) SoundBank.VERSION);
+		header.putShort((short) 0);
+		header.putInt(entries.size());
+		header.putInt(header.capacity() - SoundBank.HEADER_SIZE);
+		
+		long offset = align(header.capacity());
+		for(Entry entry : entries) {
+			header.putShort((short) entry.name.length);
+			header.put(entry.name);
+			header.put((byte) entry.format.ordinal());
+			header.put((byte) entry.channels);
+			header.putShort((short) entry.samplesPerBlock);
+			header.putInt(entry.frequency);
+			header.putInt(entry.frames);
+			header.putLong(offset);
+			header.putLong(entry.payload.remaining());
+			offset = align(offset + entry.payload.remaining());
+		}
+		if (offset>Integer.MAX_VALUE) throw new IOException("Bank would be "+offset+" bytes, which is too large to map.");
+		header.flip();
+		
+		Path parent = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		try {
+			try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(out, header, 0L);
+				long position = align(header.limit());
+				for(Entry entry : entries) {
+					ByteBuffer payload = entry.payload.duplicate();
+					writeFully(out, payload, position);
+					position = align(position + entry.payload.remaining());
+				}
+				out.truncate(position);
+				out.force(true);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	private void add(Entry entry) {
+		if (entry.name.length>0xFFFF) throw new IllegalArgumentException("Entry names are limited to 65535 bytes.");
+		if (!names.add(new String(entry.name, StandardCharsets.UTF_8))) {
+			throw new IllegalArgumentException("There is already an entry named \""+new String(entry.name, StandardCharsets.UTF_8)+"\".");
+		}
+		entries.add(entry);
+	}
+	
+	private int indexLength() {
+		int result = 0;
+		for(Entry entry : entries) result += SoundBank.ENTRY_FIXED_SIZE + entry.name.length;
+		return result;
+	}
+	
+	private static long align(long offset) {
+		int mask = SoundBank.PAYLOAD_ALIGNMENT-1;
+		return (offset + mask) & ~mask;
+	}
+	
+	private static void writeFully(FileChannel out, ByteBuffer data, long position) throws IOException {
+		while(data.hasRemaining()) {
+			position += out.write(data, position);
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length<2) {
+			System.err.println("Usage: SoundBankWriter <bank file> <sound directory> [--adpcm]");
+			System.exit(1);
+		}
+		Path bank = Paths.get(args[0]);
+		Path root = Paths.get(args[1]);
+		boolean adpcm = args.length>2 && args[2].equals("--adpcm");
+		
+		List<Path> files;
+		try(Stream<Path> walk = Files.walk(root)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		
+		SoundBankWriter writer = new SoundBankWriter();
+		for(Path file : files) {
+			String fileName = file.getFileName().toString();
+			int dot = fileName.lastIndexOf('.');
+			if (dot<0) continue;
+			String extension = fileName.substring(dot+1).toLowerCase();
+			
+			String name = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+			name = name.substring(0, name.length() - extension.length() - 1);
+			
+			if (extension.equals("wav")) {
+				Sound sound;
+				try(InputStream in = Files.newInputStream(file)) {
+					sound = WavInput.read(in);
+				}
+				if (adpcm && sound.getChannelCount()<=2) sound = AdpcmSound.encode(sound);
+				writer.add(name, sound);
+			} else if (extension.equals("ogg")) {
+				writer.addVorbis(name, Files.readAllBytes(file));
+			}
+		}
+		
+		writer.write(bank);
+		System.out.println("Wrote "+writer.entries.size()+" sounds to "+bank);
+	}
+	
+	private static final class Entry {
+		final byte[] name;
+		final SoundBank.Format format;
+		final int channels;
+		final int samplesPerBlock;
+		final int frequency;
+		final int frames;
+		final ByteBuffer payload;
+		
+		Entry(String name, SoundBank.Format format, int channels, int samplesPerBlock, int frequency, int frames, ByteBuffer payload) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.format = format;
+			this.channels = channels;
+			this.samplesPerBlock = samplesPerBlock;
+			this.frequency = frequency;
+			this.frames = frames;
+			this.payload = payload;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.stb.STBVorbisInfo;
+
+import com.playsawdust.chipper.glow.audio.Sound;
+
+public class VorbisInput {
+	/**
+	 * Memory-maps an Ogg Vorbis file for incremental decoding. The file's headers are checked by this call; audio is
+	 * decoded a block at a time as the returned Iterator is consumed. The mapping stays valid until the Iterator is
+	 * garbage collected.
+	 * @param path the Ogg Vorbis file to stream
+	 * @return a closed SampleIterator which will produce the file's sample data
+	 * @throws IOException if the file can't be read or is not an Ogg Vorbis file
+	 */
+	public static VorbisSampleIterator stream(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size>Integer.MAX_VALUE) throw new IOException("File is too large to map.");
+			return stream(in.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+	
+	/**
+	 * Reads an Ogg Vorbis file from a channel into memory, and prepares it for incremental decoding. The channel is read
+	 * to the end but not closed. Only the compressed data is held, so this still costs far less than decoding the file
+	 * up front.
+	 * @param in a channel positioned at the start of the file
+	 * @return a closed SampleIterator which will produce the file's sample data
+	 * @throws IOException if the channel can't be read or does not hold an Ogg Vorbis file
+	 */
+	public static VorbisSampleIterator stream(ReadableByteChannel in) throws IOException {
+		ByteBuffer data = ByteBuffer.allocateDirect(64*1024);
+		while(in.read(data)>=0) {
+			if (!data.hasRemaining()) {
+				if (data.capacity()==Integer.MAX_VALUE) throw new IOException("File is too large to buffer.");
+				ByteBuffer larger = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, data.capacity()*2L));
+				data.flip();
+				larger.put(data);
+				data = larger;
+			}
+		}
+		data.flip();
+		return stream(data);
+	}
+	
+	/**
+	 * Prepares an Ogg Vorbis file that's already in memory for incremental decoding. The buffer is used in place from its
+	 * position to its limit, so it MUST NOT be modified while the returned Iterator is in use.
+	 * @param data a direct buffer holding the whole file
+	 * @return a closed SampleIterator which will produce the file's sample data
+	 * @throws IOException if the data is not an Ogg Vorbis file
+	 */
+	public static VorbisSampleIterator stream(ByteBuffer data) throws IOException {
+		if (!data.isDirect()) throw new IllegalArgumentException("stb_vorbis can only read direct buffers.");
+		data = data.slice();
+		
+		int[] error = new int[1];
+		long handle = STBVorbis.stb_vorbis_open_memory(data, error, null);
+		if (handle==0L) throw new IOException("Not an Ogg Vorbis file (stb_vorbis error "+error[0]+")");
+		try(STBVorbisInfo info = STBVorbisInfo.malloc()) {
+			STBVorbis.stb_vorbis_get_info(handle, info);
+			long frames = Integer.toUnsignedLong(STBVorbis.stb_vorbis_stream_length_in_samples(handle));
+			return new VorbisSampleIterator(data, info.sample_rate(), info.channels(), frames);
+		} finally {
+			STBVorbis.stb_vorbis_close(handle);
+		}
+	}
+	
+	/**
+	 * Decodes an entire Ogg Vorbis file onto the heap. Long files SHOULD be streamed with {@link #stream(Path)} instead.
+	 * @param path the Ogg Vorbis file to read
+	 * @return a Sound with the file's frequency and channel count
+	 * @throws IOException if the file can't be read or is not an Ogg Vorbis file
+	 */
+	public static Sound read(Path path) throws IOException {
+		return decode(stream(path));
+	}
+	
+	/**
+	 * Decodes an entire Ogg Vorbis file that's already in memory onto the heap.
+	 * @param data a direct buffer holding the whole file
+	 * @return a Sound with the file's frequency and channel count
+	 * @throws IOException if the data is not an Ogg Vorbis file
+	 */
+	public static Sound read(ByteBuffer data) throws IOException {
+		return decode(stream(data));
+	}
+	
+	private static Sound decode(VorbisSampleIterator iterator) throws IOException {
+		long frames = iterator.getFrameCount();
+		int channels = iterator.getSourceChannelCount();
+		if (channels>2) throw new IOException("Only mono and stereo files can be read whole; this file has "+channels+" channels.");
+		if (frames*channels>Integer.MAX_VALUE) throw new IOException("File is too large to decode into memory.");
+		
+		short[] sampleData = new short[(int) (frames*channels)];
+		iterator.open(iterator.getFrequency(), channels);
+		try {
+			iterator.next(sampleData, 0, (int) frames);
+		} finally {
+			iterator.close();
+		}
+		
+		return new Sound(iterator.getFrequency(), channels, sampleData);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.stb.STBVorbis;
+
+import com.playsawdust.chipper.glow.audio.ChannelMatrix;
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+
+/**
+ * Decodes an Ogg Vorbis file a block at a time with stb_vorbis. The compressed file stays in memory, usually mapped
+ * straight from disk, and only one block of decoded samples exists at a time, so a long music track costs little more
+ * than its compressed size. Get one from {@link VorbisInput#stream(java.nio.file.Path)}.
+ *
+ * <p>This Iterator does not resample; it MUST be opened with the frequency of the file, available from
+ * {@link #getFrequency()}. Mono and stereo files are remixed to the requested channel count with the standard
+ * {@link ChannelMatrix}. Files with more channels are folded down to stereo by stb_vorbis first, since Vorbis orders
+ * surround channels differently from the layouts in {@link SampleIterator}.
+ *
+ * <p>Opening it again after closing starts over from the beginning of the file, or from the frame passed to
+ * {@link #seek(long)} while it was closed.
+ */
+public class VorbisSampleIterator implements SampleIterator {
+	/** How many sample frames are decoded at a time */
+	private static final int DECODE_FRAMES = 4096;
+	
+	private final ByteBuffer data;
+	private final int frequency;
+	private final int sourceChannels;
+	private final long frameCount;
+	
+	private boolean isOpen = false;
+	private long handle = 0L;
+	private int channels = 0;
+	private int decodeChannels = 0;
+	private ChannelMatrix matrix;
+	private short[] decoded;
+	/** Frames already handed out of the decoded block */
+	private int decodedPos = 0;
+	/** Frames in the decoded block */
+	private int decodedFrames = 0;
+	private boolean ended = false;
+	private long position = 0L;
+	private long startFrame = 0L;
+	
+	VorbisSampleIterator(ByteBuffer data, int frequency, int sourceChannels, long frameCount) {
+		this.data = data;
+		this.frequency = frequency;
+		this.sourceChannels = sourceChannels;
+		this.frameCount = frameCount;
+	}
+	
+	/**
+	 * Gets the sample frequency of the file, which is the only frequency this Iterator can be opened with.
+	 */
+	public int getFrequency() {
+		return frequency;
+	}
+	
+	/**
+	 * Gets the number of channels stored in the file.
+	 */
+	public int getSourceChannelCount() {
+		return sourceChannels;
+	}
+	
+	/**
+	 * Gets the length of the file in sample frames.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+	
+	/**
+	 * Gets the index of the next frame this Iterator will produce.
+	 */
+	public long getPosition() {
+		return (isOpen) ? position : startFrame;
+	}
+	
+	/**
+	 * Moves to a sample frame, so that it's the next one produced. stb_vorbis finds the right Ogg page by bisection and
+	 * decodes forward from there, so seeking costs a few page reads rather than decoding everything before the frame.
+	 * Seeking while closed sets where the next open starts.
+	 * @param frame the frame to move to, from 0 to {@link #getFrameCount()}
+	 */
+	public void seek(long frame) {
+		if (frame<0 || frame>frameCount) throw new IllegalArgumentException("Frame "+frame+" is outside the file, which has "+frameCount+" frames.");
+		if (!isOpen) {
+			startFrame = frame;
+			return;
+		}
+		
+		decodedPos = 0;
+		decodedFrames = 0;
+		position = frame;
+		if (frame==frameCount) {
+			ended = true;
+			return;
+		}
+		if (!STBVorbis.stb_vorbis_seek(handle, (int) frame)) {
+			throw new IllegalStateException("Could not seek to frame "+frame+" (stb_vorbis error "+STBVorbis.stb_vorbis_get_error(handle)+")");
+		}
+		ended = false;
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("VorbisSampleIterator is already open.");
+		if (frequency!=this.frequency) throw new IllegalArgumentException("File is "+this.frequency+"Hz and cannot be opened at "+frequency+"Hz.");
+		
+		int[] error = new int[1];
+		handle = STBVorbis.stb_vorbis_open_memory(data, error, null);
+		if (handle==0L) throw new IllegalStateException("Could not open Vorbis stream (stb_vorbis error "+error[0]+")");
+		
+		this.channels = channels;
+		decodeChannels = Math.min(sourceChannels, 2);
+		matrix = ChannelMatrix.of(decodeChannels, channels);
+		decoded = new short[DECODE_FRAMES*decodeChannels];
+		decodedPos = 0;
+		decodedFrames = 0;
+		ended = false;
+		position = 0L;
+		isOpen = true;
+		
+		if (startFrame>0) seek(startFrame);
+		startFrame = 0L;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("VorbisSampleIterator must be open for this operation.");
+		
+		int written = 0;
+		while(written<frames) {
+			if (decodedPos>=decodedFrames) {
+				if (!decodeBlock()) {
+					Arrays.fill(buffer, offset + written*channels, offset + frames*channels, (short) 0);
+					return;
+				}
+			}
+			
+			int count = Math.min(frames-written, decodedFrames-decodedPos);
+			matrix.apply(decoded, decodedPos*decodeChannels, buffer, offset + written*channels, count);
+			decodedPos += count;
+			written += count;
+			position += count;
+		}
+	}
+	
+	@Override
+	public boolean isExhausted() {
+		return isOpen && ended && decodedPos>=decodedFrames;
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? channels : 0;
+	}
+	
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		STBVorbis.stb_vorbis_close(handle);
+		handle = 0L;
+		decoded = null;
+		isOpen = false;
+	}
+	
+	/**
+	 * Decodes the next block of the file. Returns false if there is no more data.
+	 */
+	private boolean decodeBlock() {
+		if (ended) return false;
+		
+		//stb_vorbis fills the whole array unless the stream ends first
+		int count = STBVorbis.stb_vorbis_get_samples_short_interleaved(handle, decodeChannels, decoded);
+		decodedPos = 0;
+		decodedFrames = count;
+		if (count<DECODE_FRAMES) ended = true;
+		return count>0;
+	}
+}
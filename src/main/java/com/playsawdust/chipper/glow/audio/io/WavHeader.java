@@ -0,0 +1,146 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The format information of a WAV file, plus the location of its sample data. Reading one only touches the RIFF and
+ * chunk headers and the fmt chunk, so it costs the same no matter how large the file is. Both ordinary little-endian
+ * RIFF files and big-endian RIFX files are understood.
+ */
+class WavHeader {
+	private static final int RIFF = 0x46464952; // "RIFF" read LE
+	private static final int RIFX = 0x58464952; // "RIFX"
+	private static final int WAVE = 0x45564157; // "WAVE"
+	private static final int FMT  = 0x20746D66; // "fmt "
+	private static final int DATA = 0x61746164; // "data"
+	
+	/** The byte order of every header field and sample in the file: big-endian for RIFX, little-endian otherwise */
+	ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+	int sampleFormat;
+	int channels;
+	int frequency;
+	int blockAlignment;
+	int bitsPerSample;
+	/** Position of the first byte of sample data in the file */
+	long dataOffset;
+	/** Length in bytes of the sample data */
+	long dataLength;
+	
+	int bytesPerSample() {
+		return bitsPerSample/8;
+	}
+	
+	/** The number of bytes in one sample frame. Not trusted from the file, since blockAlignment is often wrong. */
+	int bytesPerFrame() {
+		return bytesPerSample()*channels;
+	}
+	
+	long frameCount() {
+		return dataLength / bytesPerFrame();
+	}
+	
+	/**
+	 * Reads the header of the WAV file open in the provided channel. The channel's position is not used or changed.
+	 */
+	static WavHeader read(FileChannel in) throws IOException {
+		return read(in.size(), (buf, position, length)->readFully(in, buf, position, length));
+	}
+	
+	/**
+	 * Reads the header of the WAV file held in the provided buffer, from its start to its limit. The buffer's position
+	 * and byte order are not used or changed.
+	 */
+	static WavHeader read(ByteBuffer in) throws IOException {
+		return read(in.limit(), (buf, position, length)->{
+			if (position+length>in.limit()) throw new EOFException();
+			buf.clear().limit(length);
+			buf.put(0, in, (int) position, length);
+		});
+	}
+	
+	private static WavHeader read(long fileSize, HeaderSource in) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		
+		in.read(buf, 0L, 12);
+		WavHeader result = new WavHeader();
+		int magic = buf.getInt(0);
+		if (magic==RIFX) {
+			result.order = ByteOrder.BIG_ENDIAN;
+		} else if (magic!=RIFF) {
+			throw new IOException("File is not a valid RIFF.");
+		}
+		buf.order(result.order);
+		if (fourCC(buf, 8)!=WAVE) throw new IOException("File is a valid RIFF but does not contain WAV data.");
+		
+		boolean foundFormat = false;
+		boolean foundData = false;
+		long pos = 12L;
+		while(pos+8 <= fileSize && !(foundFormat && foundData)) {
+			in.read(buf, pos, 8);
+			int chunkType = fourCC(buf, 0);
+			long chunkSize = buf.getInt(4) & 0xFFFFFFFFL;
+			long chunkStart = pos + 8;
+			
+			if (chunkType==FMT) {
+				if (chunkSize<16) throw new IOException("Formatting data is truncated.");
+				in.read(buf, chunkStart, 16);
+				result.sampleFormat = buf.getShort(0) & 0xFFFF;
+				result.channels = buf.getShort(2) & 0xFFFF;
+				result.frequency = buf.getInt(4);
+				//int bytesPerSecond = buf.getInt(8);
+				result.blockAlignment = buf.getShort(12) & 0xFFFF;
+				result.bitsPerSample = buf.getShort(14) & 0xFFFF;
+				foundFormat = true;
+			} else if (chunkType==DATA) {
+				result.dataOffset = chunkStart;
+				//Files written by streaming recorders often leave the size unset, so trust the file length over it
+				result.dataLength = Math.min(chunkSize, fileSize-chunkStart);
+				foundData = true;
+			}
+			
+			pos = chunkStart + chunkSize + (chunkSize & 1); //Chunks are padded to even sizes
+		}
+		
+		if (!foundFormat) throw new IOException("No formatting data present in this file.");
+		if (!foundData) throw new IOException("No waveform data present in this file.");
+		if (result.sampleFormat!=0x0001) throw new IOException("Unknown sample format 0x"+Integer.toHexString(result.sampleFormat));
+		if ((result.bitsPerSample%8)!=0 || result.bitsPerSample==0 || result.bitsPerSample>32) throw new IOException("Unusual data encoding!");
+		if (result.channels==0) throw new IOException("File has no audio channels.");
+		
+		return result;
+	}
+	
+	/**
+	 * Reads a chunk ID. IDs are strings of four bytes, so they read the same in either byte order.
+	 */
+	private static int fourCC(ByteBuffer buf, int index) {
+		int value = buf.getInt(index);
+		return (buf.order()==ByteOrder.LITTLE_ENDIAN) ? value : Integer.reverseBytes(value);
+	}
+	
+	private interface HeaderSource {
+		/** Reads length bytes starting at position into the start of buf */
+		void read(ByteBuffer buf, long position, int length) throws IOException;
+	}
+	
+	private static void readFully(FileChannel in, ByteBuffer buf, long position, int length) throws IOException {
+		buf.clear().limit(length);
+		while(buf.hasRemaining()) {
+			int read = in.read(buf, position + buf.position());
+			if (read<0) throw new EOFException();
+		}
+	}
+}
@@ -11,120 +11,114 @@ package com.playsawdust.chipper.glow.audio.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+import com.playsawdust.chipper.glow.audio.BufferedSound;
+import com.playsawdust.chipper.glow.audio.NativeSound;
 import com.playsawdust.chipper.glow.audio.Sound;
-import com.playsawdust.chipper.glow.io.DataSlice;
-import com.playsawdust.chipper.glow.io.riff.ListRiffChunk;
-import com.playsawdust.chipper.glow.io.riff.RiffChunk;
-import com.playsawdust.chipper.glow.io.riff.RiffInputStream;
 
 public class WavInput {
+	/** How many samples readNative converts per block */
+	private static final int NATIVE_READ_SAMPLES = 16384;
+	
 	public static Sound read(InputStream in) throws IOException {
-		RiffChunk chunk = new RiffInputStream(in).readChunk();
+		ByteBuffer file = ByteBuffer.wrap(in.readAllBytes());
 		in.close();
-		if (chunk instanceof ListRiffChunk) {
-			ListRiffChunk list = (ListRiffChunk) chunk;
-			
-			if (list.getListType().equals("WAVE")) {
-				//Grab the two chunks we *need*
-				RiffChunk fmtChunk = null;
-				RiffChunk dataChunk = null;
-				
-				for(RiffChunk child : list.getChildren()) {
-					if (child.getChunkType().equals("fmt")) fmtChunk = child;
-					if (child.getChunkType().equals("data")) dataChunk = child;
-					//System.out.println(child.getChunkType());
-				}
-				
-				if (fmtChunk==null) throw new IOException("No formatting data present in this file.");
-				if (dataChunk==null) throw new IOException("No waveform data present in this file.");
-				
-				DataSlice formatSlice = fmtChunk.getChunkData();
-				formatSlice.seek(0L); //reset the slice position just in case, but keep it in LE
-				int sampleFormat = formatSlice.readI16u();
-				if (sampleFormat!=0x0001) throw new IOException("Unknown sample format 0x"+Integer.toHexString(sampleFormat));
-				//System.out.println("SampleFormat: "+Integer.toHexString(sampleFormat));
-				int numChannels = formatSlice.readI16u();
-				//System.out.println("Number of channels: "+numChannels);
-				int samplesPerSecond = formatSlice.readI32s();
-				int bytesPerSecond = formatSlice.readI32s();
-				//System.out.println("Samples per second: "+samplesPerSecond+" bytesPerSecond: "+bytesPerSecond);
-				
-				int blockAlignment = formatSlice.readI16u();
-				int bitsPerSample = formatSlice.readI16u();
-				if ((bitsPerSample%8)!=0) throw new IOException("Unusual data encoding!");
-				//System.out.println("Bytes per sample: "+blockAlignment+" BitsPerSample: "+bitsPerSample);
-				
-				//System.out.println("Marker position: "+formatSlice.position()+" length: "+formatSlice.length());
-				
-				//int cbSize = formatSlice.readI16u();
-				//System.out.println("cbSize: "+cbSize);
-				
-				
-				DataSlice waveformData = dataChunk.getChunkData();
-				waveformData.seek(0L);
-				
-				//bitsPerSample /= numChannels;
-				int bytesPerSample = bitsPerSample/8;
-				int sampleCount = (int) (waveformData.length() / (bytesPerSample*numChannels));
-				//if (numChannels>1) sampleCount/=numChannels;
-				short[] sampleData = new short[sampleCount*numChannels];
-				
-				//System.out.println("Bytes per sample: "+bytesPerSample);
-				for(int i=0; i<sampleCount; i++) {
-					for(int j=0; j<numChannels; j++) {
-						sampleData[i*numChannels+j] = readShortSample(bytesPerSample, waveformData);
-						
-						//if (waveformData.position()+4>waveformData.length()) break;
-						//sampleData[i] = waveformData.readI16s();
-					}
-				}
-				return new Sound(samplesPerSecond, numChannels, sampleData);
-				//return sampleData;
-			} else {
-				throw new IOException("File is a valid RIFF but does not contain WAV data.");
-			}
-		} else {
-			throw new IOException("File is a valid RIFF but does not contain WAV data.");
+		
+		WavHeader header = WavHeader.read(file);
+		int sampleCount = (int) (header.frameCount()*header.channels);
+		short[] sampleData = new short[sampleCount];
+		
+		file.position((int) header.dataOffset);
+		PcmConversion.toShorts(header.bytesPerSample(), file, header.order, sampleData, 0, sampleCount);
+		
+		return new Sound(header.frequency, header.channels, sampleData);
+	}
+	
+	/**
+	 * Opens a WAV file for incremental decoding. Only the file's headers are read by this call; sample data is read from
+	 * disk a block at a time as the returned Iterator is consumed, so memory use does not depend on the length of the
+	 * file.
+	 * @param path the WAV file to stream
+	 * @return a closed SampleIterator which will produce the file's sample data
+	 * @throws IOException if the file can't be read or is not a PCM WAV file
+	 */
+	public static WavSampleIterator stream(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new WavSampleIterator(path, WavHeader.read(in));
 		}
 	}
 	
-	private static short readShortSample(int bytesPerSample, DataSlice in) throws IOException {
-		switch(bytesPerSample) {
-		case 1:
-			int value = in.read() - 128;
-			return (short) (value * 256);
-		case 2:
-			return in.readI16s();
-		case 3:
-			int a = in.read() & 0xFF;
-			int b = in.read() & 0xFF;
-			int c = in.read() & 0xFF;
+	/**
+	 * Memory-maps a 16-bit PCM WAV file and returns a Sound which views its sample data in place. Nothing is copied
+	 * onto the Java heap, and uploading the result to the AL reads straight from the page cache. The mapping stays valid
+	 * until the returned Sound is garbage collected.
+	 * @param path the WAV file to map
+	 * @return a Sound backed by the mapped sample data
+	 * @throws IOException if the file can't be read, is not a PCM WAV file, or is not 16-bit
+	 */
+	public static BufferedSound map(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			WavHeader header = WavHeader.read(in);
+			if (header.bitsPerSample!=16) throw new IOException("Only 16-bit files can be mapped; this file is "+header.bitsPerSample+"-bit.");
 			
+			long length = header.frameCount()*header.bytesPerFrame();
+			if (length>Integer.MAX_VALUE) throw new IOException("File is too large to map.");
+			MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, header.dataOffset, length);
 			
+			ByteBuffer samples = mapped;
+			if (ByteOrder.nativeOrder()!=header.order) {
+				//The AL wants native-order samples, so a file in the other byte order has to pay for a swapped copy
+				samples = ByteBuffer.allocateDirect((int) length).order(ByteOrder.nativeOrder());
+				samples.asShortBuffer().put(mapped.order(header.order).asShortBuffer());
+			}
 			
-			if (in.getByteOrder()==ByteOrder.BIG_ENDIAN) {
-				int reconstruct = (a << 16) | (b << 8) | c;
-				if ((a & 0x80) != 0) reconstruct |= 0xFF000000;
-				
-				//System.out.println("Reconstructing "+Integer.toHexString(a)+" "+Integer.toHexString(b)+" "+Integer.toHexString(c)+" BE ->"+Integer.toHexString(reconstruct));
-				
-				return (short) (reconstruct / 256);
-				//return (short) ((a << 8) | b); //throw away the lowest order bits in c
-			} else {
-				int reconstruct = (c << 16) | (b << 8) | a;
-				if ((c & 0x80) != 0) reconstruct |= 0xFF000000;
-				
-				//System.out.println("Reconstructing "+Integer.toHexString(a)+" "+Integer.toHexString(b)+" "+Integer.toHexString(c)+" LE ->"+Integer.toHexString(reconstruct));
-				
-				return (short) (reconstruct / 256);
+			return new BufferedSound(header.frequency, header.channels, samples.order(ByteOrder.nativeOrder()).asShortBuffer());
+		}
+	}
+	
+	/**
+	 * Decodes a WAV file of any supported sample width into native memory. The file is read a block at a time through a
+	 * direct buffer and converted straight into the result, so no sample data passes through the Java heap. The caller
+	 * is responsible for closing the returned Sound.
+	 * @param path the WAV file to read
+	 * @return a NativeSound holding the file's samples as 16-bit PCM
+	 * @throws IOException if the file can't be read or is not a PCM WAV file
+	 */
+	public static NativeSound readNative(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			WavHeader header = WavHeader.read(in);
+			long samples = header.frameCount()*header.channels;
+			if (samples>Integer.MAX_VALUE) throw new IOException("File is too large to decode into memory.");
+			
+			NativeSound result = new NativeSound(header.frequency, header.channels, (int) header.frameCount());
+			try {
+				ShortBuffer dest = result.getBuffer();
+				int bytesPerSample = header.bytesPerSample();
+				ByteBuffer read = ByteBuffer.allocateDirect(NATIVE_READ_SAMPLES*bytesPerSample);
+				long position = header.dataOffset;
+				while(dest.hasRemaining()) {
+					read.clear();
+					read.limit(Math.min(read.capacity(), dest.remaining()*bytesPerSample));
+					while(read.hasRemaining()) {
+						int count = in.read(read, position);
+						if (count<0) throw new IOException("File ends partway through its sample data.");
+						position += count;
+					}
+					read.flip();
+					PcmConversion.toShorts(bytesPerSample, read, header.order, dest, read.remaining()/bytesPerSample);
+				}
+			} catch (IOException | RuntimeException ex) {
+				result.close();
+				throw ex;
 			}
-		case 4:
-			return (short) (in.readI32s() >> 16);
-			default:
-				System.out.println("Reconstructing nonsense");
-				return 0;
+			return result;
 		}
 	}
 }
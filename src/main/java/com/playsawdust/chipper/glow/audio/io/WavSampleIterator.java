@@ -0,0 +1,197 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.playsawdust.chipper.glow.audio.SampleIterator;
+
+/**
+ * Decodes a WAV file a block at a time, straight from disk. Only one read-block worth of the file is in memory at any
+ * time, so memory use is constant regardless of the length of the file. Get one from {@link WavInput#stream(Path)}.
+ *
+ * <p>This Iterator does not resample; it MUST be opened with the frequency of the file, available from
+ * {@link #getFrequency()}. Any channel count is accepted and mapped per the rules in {@link SampleIterator}. Opening it
+ * again after closing starts over from the beginning of the file.
+ */
+public class WavSampleIterator implements SampleIterator {
+	/** How many sample frames are read from disk at a time */
+	private static final int READ_FRAMES = 4096;
+	
+	private final Path path;
+	private final WavHeader header;
+	private boolean isOpen = false;
+	private int channels = 0;
+	private int[] channelMap;
+	private FileChannel in;
+	private ByteBuffer readBuffer;
+	private short[] decoded;
+	private long readPosition;
+	private long dataRemaining;
+	
+	WavSampleIterator(Path path, WavHeader header) {
+		this.path = path;
+		this.header = header;
+	}
+	
+	/**
+	 * Gets the sample frequency of the file, which is the only frequency this Iterator can be opened with.
+	 */
+	public int getFrequency() {
+		return header.frequency;
+	}
+	
+	/**
+	 * Gets the number of channels stored in the file.
+	 */
+	public int getSourceChannelCount() {
+		return header.channels;
+	}
+	
+	/**
+	 * Gets the length of the file in sample frames.
+	 */
+	public long getFrameCount() {
+		return header.frameCount();
+	}
+	
+	@Override
+	public void open(int frequency, int channels) {
+		if (isOpen) throw new IllegalStateException("WavSampleIterator is already open.");
+		if (frequency!=header.frequency) throw new IllegalArgumentException("File is "+header.frequency+"Hz and cannot be opened at "+frequency+"Hz.");
+		
+		try {
+			in = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		
+		this.channels = channels;
+		channelMap = new int[channels];
+		for(int i=0; i<channels; i++) {
+			if (header.channels==1) {
+				channelMap[i] = (i<2) ? 0 : -1; //Mono goes into both stereo channels
+			} else {
+				channelMap[i] = (i<header.channels) ? i : -1;
+			}
+		}
+		
+		int bytesPerFrame = header.bytesPerFrame();
+		readBuffer = ByteBuffer.allocateDirect(READ_FRAMES*bytesPerFrame).order(header.order);
+		readBuffer.limit(0);
+		decoded = new short[READ_FRAMES*header.channels];
+		readPosition = header.dataOffset;
+		dataRemaining = header.frameCount()*bytesPerFrame; //Drop any trailing partial frame
+		isOpen = true;
+	}
+	
+	@Override
+	public void next(short[] buffer) {
+		next(buffer, 0, 1);
+	}
+	
+	@Override
+	public void next(short[] buffer, int offset, int frames) {
+		if (!isOpen) throw new IllegalStateException("WavSampleIterator must be open for this operation.");
+		
+		int bytesPerFrame = header.bytesPerFrame();
+		int written = 0;
+		while(written<frames) {
+			if (readBuffer.remaining()<bytesPerFrame) {
+				if (!fillReadBuffer()) {
+					Arrays.fill(buffer, offset + written*channels, offset + frames*channels, (short) 0);
+					return;
+				}
+			}
+			
+			int count = Math.min(frames-written, readBuffer.remaining()/bytesPerFrame);
+			decode(count, buffer, offset + written*channels);
+			written += count;
+		}
+	}
+	
+	@Override
+	public boolean isExhausted() {
+		return isOpen && dataRemaining==0 && readBuffer.remaining()<header.bytesPerFrame();
+	}
+	
+	@Override
+	public int getChannelCount() {
+		return (isOpen) ? channels : 0;
+	}
+	
+	@Override
+	public void close() {
+		if (!isOpen) return;
+		try {
+			in.close();
+		} catch (IOException ex) {
+			//Nothing useful to do; the handle is gone either way
+		}
+		in = null;
+		readBuffer = null;
+		decoded = null;
+		isOpen = false;
+	}
+	
+	/**
+	 * Reads the next block of sample data from the file. Returns false if there is no more data.
+	 */
+	private boolean fillReadBuffer() {
+		readBuffer.clear();
+		if (dataRemaining<readBuffer.capacity()) readBuffer.limit((int) dataRemaining);
+		
+		try {
+			while(readBuffer.hasRemaining()) {
+				int read = in.read(readBuffer, readPosition);
+				if (read<0) break; //File was truncated out from under us
+				readPosition += read;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		
+		dataRemaining = (readBuffer.hasRemaining()) ? 0 : dataRemaining - readBuffer.position();
+		readBuffer.flip();
+		return readBuffer.remaining()>=header.bytesPerFrame();
+	}
+	
+	/**
+	 * Decodes count frames out of the read buffer and into dest, mapping file channels to output channels.
+	 */
+	private void decode(int count, short[] dest, int destOffset) {
+		int fileChannels = header.channels;
+		if (fileChannels==channels) {
+			decodeSamples(count*fileChannels, dest, destOffset);
+			return;
+		}
+		
+		decodeSamples(count*fileChannels, decoded, 0);
+		for(int i=0; i<count; i++) {
+			int src = i*fileChannels;
+			int dst = destOffset + i*channels;
+			for(int j=0; j<channels; j++) {
+				int mapped = channelMap[j];
+				dest[dst+j] = (mapped<0) ? 0 : decoded[src+mapped];
+			}
+		}
+	}
+	
+	private void decodeSamples(int count, short[] dest, int destOffset) {
+		PcmConversion.toShorts(header.bytesPerSample(), readBuffer, header.order, dest, destOffset, count);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events AudioMetrics emits. They only appear in a recording while metrics are enabled, and
+ * can be turned on or off individually in the recording settings like any other event.
+ */
+final class AudioEvents {
+	private AudioEvents() {}
+	
+	@Name("com.playsawdust.chipper.glow.audio.Poll")
+	@Label("Audio Poll")
+	@Category({"Glow", "Audio"})
+	@Description("One call to ALAudioSystem.poll()")
+	@StackTrace(false)
+	static class Poll extends Event {
+		@Label("Poll Time")
+		@Timespan
+		long time;
+		
+		@Label("Active Sources")
+		int activeSources;
+		
+		@Label("Idle Pooled Sources")
+		int pooledSources;
+		
+		@Label("Voices")
+		int voices;
+	}
+	
+	@Name("com.playsawdust.chipper.glow.audio.Upload")
+	@Label("Audio Buffer Upload")
+	@Category({"Glow", "Audio"})
+	@Description("Sample data sent to the AL through alBufferData")
+	@StackTrace(false)
+	static class Upload extends Event {
+		@Label("Size")
+		@DataAmount
+		long bytes;
+		
+		@Label("Streaming")
+		boolean streaming;
+	}
+	
+	@Name("com.playsawdust.chipper.glow.audio.Underrun")
+	@Label("Audio Stream Underrun")
+	@Category({"Glow", "Audio"})
+	@Description("A streaming source played out every queued buffer and had to be restarted")
+	@StackTrace(false)
+	static class Underrun extends Event {
+		@Label("Source")
+		int source;
+	}
+	
+	@Name("com.playsawdust.chipper.glow.audio.SourceRejected")
+	@Label("Audio Source Rejected")
+	@Category({"Glow", "Audio"})
+	@Description("ALAudioSystem.getSource() found no source to hand out")
+	static class SourceRejected extends Event {
+	}
+	
+	/** Fires once per effect per block, so it's off unless a recording asks for it */
+	@Name("com.playsawdust.chipper.glow.audio.Effect")
+	@Label("Audio Effect Block")
+	@Category({"Glow", "Audio"})
+	@Description("One block processed by an AudioEffect in an AudioBus")
+	@Enabled(false)
+	@StackTrace(false)
+	static class Effect extends Event {
+		@Label("Processing Time")
+		@Timespan
+		long time;
+		
+		@Label("Effect")
+		String effect;
+		
+		@Label("Frames")
+		int frames;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.EventType;
+
+/**
+ * Collects counters and timings from a running audio system. Metrics are off by default: every instrumented spot in
+ * the library holds a reference to an AudioMetrics which is null until metrics are enabled, so the only cost while
+ * they're off is a null check. Turn them on with
+ * {@link com.playsawdust.chipper.glow.audio.al.ALAudioSystem#enableMetrics() ALAudioSystem.enableMetrics()}, and hand
+ * the result to any {@link com.playsawdust.chipper.glow.audio.analog.AudioBus AudioBus} whose effects should be timed.
+ *
+ * <p>While enabled, everything recorded here is also emitted as a JDK Flight Recorder event in the "Glow / Audio"
+ * category, so it lines up with GC pauses and everything else in a recording. Recording methods may be called from
+ * any thread, and {@link #snapshot()} may be called from any thread at any time.
+ */
+public class AudioMetrics {
+	private static final EventType POLL_EVENT = EventType.getEventType(AudioEvents.Poll.class);
+	private static final EventType UPLOAD_EVENT = EventType.getEventType(AudioEvents.Upload.class);
+	private static final EventType UNDERRUN_EVENT = EventType.getEventType(AudioEvents.Underrun.class);
+	private static final EventType REJECTED_EVENT = EventType.getEventType(AudioEvents.SourceRejected.class);
+	private static final EventType EFFECT_EVENT = EventType.getEventType(AudioEvents.Effect.class);
+	
+	private volatile int activeSources = 0;
+	private volatile int pooledSources = 0;
+	private volatile int persistentSources = 0;
+	private volatile int voices = 0;
+	private final LongAdder sourceRejections = new LongAdder();
+	private final LongAdder bytesUploaded = new LongAdder();
+	private final LongAdder streamUnderruns = new LongAdder();
+	private final TimingHistogram pollTime = new TimingHistogram();
+	private final ConcurrentHashMap<String, TimingHistogram> effectTimes = new ConcurrentHashMap<>();
+	
+	/**
+	 * Records one poll of the audio system, along with the source and voice counts it finished with.
+	 * @param nanos how long the poll took
+	 */
+	public void recordPoll(long nanos, int activeSources, int pooledSources, int persistentSources, int voices) {
+		this.activeSources = activeSources;
+		this.pooledSources = pooledSources;
+		this.persistentSources = persistentSources;
+		this.voices = voices;
+		pollTime.record(nanos);
+		
+		if (POLL_EVENT.isEnabled()) {
+			AudioEvents.Poll event = new AudioEvents.Poll();
+			event.time = nanos;
+			event.activeSources = activeSources;
+			event.pooledSources = pooledSources;
+			event.voices = voices;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Records a request for a pooled source that couldn't be satisfied.
+	 */
+	public void recordSourceRejection() {
+		sourceRejections.increment();
+		
+		if (REJECTED_EVENT.isEnabled()) new AudioEvents.SourceRejected().commit();
+	}
+	
+	/**
+	 * Records sample data sent to the AL.
+	 * @param streaming true if the data was one block of a stream, false if it was a whole Sound
+	 */
+	public void recordUpload(long bytes, boolean streaming) {
+		bytesUploaded.add(bytes);
+		
+		if (UPLOAD_EVENT.isEnabled()) {
+			AudioEvents.Upload event = new AudioEvents.Upload();
+			event.bytes = bytes;
+			event.streaming = streaming;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Records a streaming source running out of queued audio before it was refilled.
+	 * @param source the AL handle of the source
+	 */
+	public void recordUnderrun(int source) {
+		streamUnderruns.increment();
+		
+		if (UNDERRUN_EVENT.isEnabled()) {
+			AudioEvents.Underrun event = new AudioEvents.Underrun();
+			event.source = source;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Records one block of processing by an effect. Timings are kept per effect class.
+	 */
+	public void recordEffect(Object effect, int frames, long nanos) {
+		String name = effect.getClass().getName();
+		effectTimes.computeIfAbsent(name, (it)->new TimingHistogram()).record(nanos);
+		
+		if (EFFECT_EVENT.isEnabled()) {
+			AudioEvents.Effect event = new AudioEvents.Effect();
+			event.time = nanos;
+			event.effect = name;
+			event.frames = frames;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Captures the current value of every metric. Counters and timings accumulate from when metrics were enabled, or
+	 * from the last {@link #reset()}; source and voice counts are as of the end of the most recent poll.
+	 */
+	public AudioMetricsSnapshot snapshot() {
+		Map<String, TimingStats> effects = new HashMap<>();
+		for(Map.Entry<String, TimingHistogram> entry : effectTimes.entrySet()) {
+			effects.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		
+		return new AudioMetricsSnapshot(
+				activeSources, pooledSources, persistentSources, voices,
+				sourceRejections.sum(), bytesUploaded.sum(), streamUnderruns.sum(),
+				pollTime.snapshot(), effects);
+	}
+	
+	/**
+	 * Zeroes every counter and timing. Source and voice counts are left alone, and refreshed on the next poll.
+	 */
+	public void reset() {
+		sourceRejections.reset();
+		bytesUploaded.reset();
+		streamUnderruns.reset();
+		pollTime.reset();
+		effectTimes.clear();
+	}
+}
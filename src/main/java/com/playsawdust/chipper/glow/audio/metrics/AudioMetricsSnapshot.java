@@ -0,0 +1,110 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable copy of every value in an {@link AudioMetrics} at one moment. Cheap enough to take once per frame for
+ * a debug overlay.
+ */
+public final class AudioMetricsSnapshot {
+	private final int activeSources;
+	private final int pooledSources;
+	private final int persistentSources;
+	private final int voices;
+	private final long sourceRejections;
+	private final long bytesUploaded;
+	private final long streamUnderruns;
+	private final TimingStats pollTime;
+	private final Map<String, TimingStats> effectTimes;
+	
+	AudioMetricsSnapshot(int activeSources, int pooledSources, int persistentSources, int voices, long sourceRejections,
+			long bytesUploaded, long streamUnderruns, TimingStats pollTime, Map<String, TimingStats> effectTimes) {
+		this.activeSources = activeSources;
+		this.pooledSources = pooledSources;
+		this.persistentSources = persistentSources;
+		this.voices = voices;
+		this.sourceRejections = sourceRejections;
+		this.bytesUploaded = bytesUploaded;
+		this.streamUnderruns = streamUnderruns;
+		this.pollTime = pollTime;
+		this.effectTimes = Collections.unmodifiableMap(effectTimes);
+	}
+	
+	/**
+	 * Gets how many pooled sources were in use at the end of the last poll.
+	 */
+	public int getActiveSources() {
+		return activeSources;
+	}
+	
+	/**
+	 * Gets how many pooled sources were allocated but idle at the end of the last poll.
+	 */
+	public int getPooledSources() {
+		return pooledSources;
+	}
+	
+	/**
+	 * Gets how many sources from {@code createSource()} were alive at the end of the last poll.
+	 */
+	public int getPersistentSources() {
+		return persistentSources;
+	}
+	
+	/**
+	 * Gets how many voices, real or virtual, were playing at the end of the last poll.
+	 */
+	public int getVoices() {
+		return voices;
+	}
+	
+	/**
+	 * Gets how many times {@code getSource()} had nothing to hand out.
+	 */
+	public long getSourceRejections() {
+		return sourceRejections;
+	}
+	
+	/**
+	 * Gets how many bytes of sample data have been sent to the AL, for both whole Sounds and streams.
+	 */
+	public long getBytesUploaded() {
+		return bytesUploaded;
+	}
+	
+	/**
+	 * Gets how many times a streaming source ran dry and had to be restarted.
+	 */
+	public long getStreamUnderruns() {
+		return streamUnderruns;
+	}
+	
+	public TimingStats getPollTime() {
+		return pollTime;
+	}
+	
+	/**
+	 * Gets processing time per block for each effect class that has run on an instrumented AudioBus, keyed by class
+	 * name.
+	 */
+	public Map<String, TimingStats> getEffectTimes() {
+		return effectTimes;
+	}
+	
+	@Override
+	public String toString() {
+		return "AudioMetrics{sources="+activeSources+" active/"+pooledSources+" pooled/"+persistentSources+" persistent"
+				+", voices="+voices+", rejections="+sourceRejections+", uploaded="+bytesUploaded+"B"
+				+", underruns="+streamUnderruns+", poll=["+pollTime+"]}";
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations into power-of-two buckets. Bucket i counts durations of at least 2^i nanoseconds (bucket 0 also
+ * takes zero) and less than 2^(i+1), which is coarse, but fixed-size, lock-free, and plenty to tell a 100us poll from
+ * a 10ms one. Safe to record into from any number of threads.
+ */
+class TimingHistogram {
+	static final int BUCKETS = 40; //2^39ns is about nine minutes
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+	
+	void record(long nanos) {
+		if (nanos<0) nanos = 0;
+		int bucket = 63 - Long.numberOfLeadingZeros(nanos|1);
+		buckets.incrementAndGet(Math.min(bucket, BUCKETS-1));
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	TimingStats snapshot() {
+		long[] counts = new long[BUCKETS];
+		for(int i=0; i<BUCKETS; i++) counts[i] = buckets.get(i);
+		return new TimingStats(count.sum(), total.sum(), max.get(), counts);
+	}
+	
+	void reset() {
+		for(int i=0; i<BUCKETS; i++) buckets.set(i, 0L);
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.metrics;
+
+/**
+ * An immutable summary of how long some repeated operation has taken.
+ */
+public final class TimingStats {
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long[] buckets;
+	
+	TimingStats(long count, long totalNanos, long maxNanos, long[] buckets) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.buckets = buckets;
+	}
+	
+	/**
+	 * Gets how many times the operation was recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+	
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+	
+	public double getMeanNanos() {
+		return (count==0) ? 0.0 : totalNanos / (double) count;
+	}
+	
+	/**
+	 * Estimates a percentile of the recorded durations. The result is the upper edge of the histogram bucket the
+	 * percentile falls into, so it may overstate the true value by up to a factor of two, but never understates it.
+	 * @param percentile a value from 0.0 to 100.0
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (count==0) return 0L;
+		long rank = (long) Math.ceil(count * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+		long seen = 0L;
+		for(int i=0; i<buckets.length; i++) {
+			seen += buckets[i];
+			if (seen>=rank && seen>0) return Math.min(maxNanos, (2L << i) - 1);
+		}
+		return maxNanos;
+	}
+	
+	/**
+	 * Gets how many recorded durations fell into a histogram bucket. Bucket i holds durations from 2^i up to, but not
+	 * including, 2^(i+1) nanoseconds.
+	 */
+	public long getBucketCount(int bucket) {
+		return buckets[bucket];
+	}
+	
+	public int getNumBuckets() {
+		return buckets.length;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d calls, mean %.1fus, p99 %.1fus, max %.1fus",
+				count, getMeanNanos()/1000.0, getPercentileNanos(99)/1000.0, maxNanos/1000.0);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.audio.al;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.audio.AudioException;
+import com.playsawdust.chipper.glow.audio.Sound;
+import com.playsawdust.chipper.glow.audio.analog.ConstantSampleIterator;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Holds {@link ALAudioSystem#poll()} to its promise of allocating nothing once the pools have grown to their working
+ * size. Needs an audio device, and is skipped without one.
+ */
+class ALAudioSystemPollTest {
+	private static final int WARMUP_POLLS = 2000;
+	private static final int MEASURED_POLLS = 1000;
+	
+	@Test
+	void steadyStatePollDoesNotAllocate() throws AudioException {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported(), "This JVM can't count allocated bytes.");
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		
+		ALAudioSystem system = new ALAudioSystem();
+		try {
+			system.init();
+		} catch (AudioException ex) {
+			assumeTrue(false, "No audio device: "+ex.getMessage());
+		}
+		
+		try {
+			Sound tone = tone(44100, 440);
+			
+			ALAudioSource persistent = system.createSource();
+			persistent.setLooping(true);
+			persistent.playSound(tone);
+			
+			ALAudioSource streamed = system.createSource();
+			streamed.playStream(new ConstantSampleIterator(), 44100, 2);
+			
+			ALAudioSource ephemeral = system.getSource().orElseThrow();
+			ephemeral.setLooping(true);
+			ephemeral.playSound(tone);
+			
+			system.playVoice(tone).setLooping(true);
+			system.getEmitters().add(tone, 0, 0, 0, 16);
+			system.getLoader();
+			
+			for(int i=0; i<WARMUP_POLLS; i++) system.poll();
+			
+			long before = threads.getThreadAllocatedBytes(thread);
+			for(int i=0; i<MEASURED_POLLS; i++) system.poll();
+			long after = threads.getThreadAllocatedBytes(thread);
+			
+			assertEquals(0L, after-before, "poll() allocated "+(after-before)+" bytes over "+MEASURED_POLLS+" polls.");
+		} finally {
+			system.delete();
+		}
+	}
+	
+	/**
+	 * Creates one second of a mono sine wave.
+	 */
+	private static Sound tone(int frequency, float pitch) {
+		short[] data = new short[frequency];
+		for(int i=0; i<data.length; i++) {
+			data[i] = (short) (Math.sin(i * pitch * 2 * Math.PI / frequency) * Short.MAX_VALUE * 0.25);
+		}
+		return new Sound(frequency, 1, data);
+	}
+}